@@ -0,0 +1,200 @@
+package service;
+
+import exception.ComplianceException;
+import model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.*;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Throughput of the service hot paths over a synthetic care home. Run with
+ * {@code mvn -Pjmh compile exec:exec}; the gc profiler adds allocation rates.
+ * Pick sizes with e.g. {@code -Djmh.args="-p wards=100 -p history=500 -prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CareHomeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"2", "50"})
+        public int wards;
+        @Param({"20", "200"})
+        public int staff;
+        /** Percentage of beds occupied before measuring; the rest stay free for allocations. */
+        @Param({"75"})
+        public int occupancy;
+        /** Administrations already on record per resident. */
+        @Param({"0", "100"})
+        public int history;
+
+        CareHomeService svc;
+        Staff manager, nurse;
+        List<String> residents = new ArrayList<>();
+        String fromBed, toBed;
+        Path dir, storeFile, legacyFile;
+        int next;
+
+        @Setup(Level.Trial)
+        public void build() throws Exception {
+            dir = Files.createTempDirectory("carehome-bench");
+            storeFile = dir.resolve("store.ser");
+            legacyFile = dir.resolve("legacy.ser");
+            svc = CareHomeService.get();
+            svc.setBackend(new SerializedStoreBackend(dir.resolve("carehome.ser"), dir.resolve("carehome.journal")));
+            svc.clearAllData();
+
+            manager = svc.login("manager", "password");
+            for (int i = 3; i <= wards; i++) svc.addWard("Ward " + i, i % 2 == 1);
+
+            nurse = svc.login("nurse", "password");
+            svc.login("manager", "password");
+            for (DayOfWeek d : DayOfWeek.values()) {
+                svc.assignShift(nurse.getId(), new Shift(d, LocalTime.MIDNIGHT, LocalTime.NOON));
+                svc.assignShift(nurse.getId(), new Shift(d, LocalTime.NOON, LocalTime.MIDNIGHT));
+            }
+            for (int i = 0; i < staff; i++) {
+                boolean isNurse = i % 4 != 0;
+                Staff s = isNurse ? svc.createNurse("nurse" + i, "pw") : svc.createDoctor("doctor" + i, "pw");
+                for (DayOfWeek d : DayOfWeek.values()) {
+                    LocalTime start = LocalTime.of(isNurse ? (i % 3) * 8 : 9 + i % 8, 0);
+                    svc.assignShift(s.getId(), new Shift(d, start, start.plusHours(isNurse ? 8 : 2)));
+                }
+            }
+
+            int beds = svc.getWards().stream().mapToInt(w -> w.getBeds().size()).sum();
+            for (int i = 0; i < beds * occupancy / 100; i++) {
+                Resident r = svc.addResident("Resident " + i, i % 2 == 0 ? Gender.MALE : Gender.FEMALE, false);
+                svc.allocateResidentToBed(r.getId());
+                residents.add(r.getId());
+            }
+
+            Session.get().setCurrentUser(nurse);
+            for (String id : residents)
+                for (int h = 0; h < history; h++) svc.administer(id, "Paracetamol", "500mg");
+
+            for (Ward w : svc.getWards())
+                for (Bed b : w.getBeds()) {
+                    if (fromBed == null && !b.isEmpty()) fromBed = b.getId();
+                    if (toBed == null && b.isEmpty()) toBed = b.getId();
+                }
+            svc.save();
+            DataStore.save(svc.currentStore(), storeFile.toString());
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(legacyFile)))) {
+                out.writeObject(svc.currentStore());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void cleanUp() throws IOException {
+            svc.setBackend(StoreBackend.open());
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /** A resident admitted but not yet placed; discharged again after each call. */
+    @State(Scope.Thread)
+    public static class Admission {
+        Resident resident;
+
+        @Setup(Level.Invocation)
+        public void admit(Dataset d) throws Exception {
+            Session.get().setCurrentUser(d.manager);
+            resident = d.svc.addResident("Incoming", Gender.FEMALE, false);
+        }
+
+        @TearDown(Level.Invocation)
+        public void release(Dataset d) throws Exception {
+            Session.get().setCurrentUser(d.manager);
+            d.svc.discharge(resident.getId());
+        }
+    }
+
+    /** A resident already in a bed, ready to be discharged. */
+    @State(Scope.Thread)
+    public static class Placed {
+        Resident resident;
+
+        @Setup(Level.Invocation)
+        public void place(Dataset d) throws Exception {
+            Session.get().setCurrentUser(d.manager);
+            resident = d.svc.addResident("Leaving", Gender.MALE, false);
+            d.svc.allocateResidentToBed(resident.getId());
+        }
+    }
+
+    @Benchmark
+    public Staff login(Dataset d) throws Exception {
+        return d.svc.login("nurse", "password");
+    }
+
+    @Benchmark
+    public Resident allocateResidentToBed(Dataset d, Admission a) throws Exception {
+        Session.get().setCurrentUser(d.manager);
+        d.svc.allocateResidentToBed(a.resident.getId());
+        return a.resident;
+    }
+
+    @Benchmark
+    public Resident allocateResidentToBedWithGender(Dataset d, Admission a) throws Exception {
+        Session.get().setCurrentUser(d.manager);
+        d.svc.allocateResidentToBedWithGender(a.resident, true);
+        return a.resident;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void moveResident(Dataset d) throws Exception {
+        Session.get().setCurrentUser(d.nurse);
+        d.svc.moveResident(d.fromBed, d.toBed);
+        d.svc.moveResident(d.toBed, d.fromBed);
+    }
+
+    @Benchmark
+    public void administer(Dataset d) throws Exception {
+        Session.get().setCurrentUser(d.nurse);
+        d.svc.administer(d.residents.get(d.next++ % d.residents.size()), "Paracetamol", "500mg");
+    }
+
+    @Benchmark
+    public void discharge(Dataset d, Placed p) throws Exception {
+        Session.get().setCurrentUser(d.manager);
+        d.svc.discharge(p.resident.getId());
+    }
+
+    @Benchmark
+    public ComplianceException checkCompliance(Dataset d) {
+        try {
+            d.svc.checkCompliance();
+            return null;
+        } catch (ComplianceException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public void saveStore(Dataset d) throws IOException {
+        DataStore.save(d.svc.currentStore(), d.dir.resolve("save.ser").toString());
+    }
+
+    @Benchmark
+    public DataStore loadStore(Dataset d) throws Exception {
+        return DataStore.load(d.storeFile.toString());
+    }
+
+    /** The same store Java-serialized, as snapshots were written before the binary format. */
+    @Benchmark
+    public DataStore loadLegacyStore(Dataset d) throws Exception {
+        return DataStore.load(d.legacyFile.toString());
+    }
+}
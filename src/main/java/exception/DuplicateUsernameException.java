@@ -0,0 +1 @@
+package exception; public class DuplicateUsernameException extends Exception { public DuplicateUsernameException(String m){super(m);} }
\ No newline at end of file
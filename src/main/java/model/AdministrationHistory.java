@@ -0,0 +1,170 @@
+package model;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * A resident's administration history packed into per-day partitions of
+ * primitive arrays: epoch-second timestamps, {@link DrugCatalog} medicine and
+ * dose codes, and nurse codes into a small string table. Records are kept in time order, so a range query
+ * only touches the days it covers. Times are stored to the second. Not thread
+ * safe; the owning Resident guards it.
+ */
+public class AdministrationHistory implements Serializable {
+    private static final long serialVersionUID = -4020173046269047421L;
+    private static final long DAY = 86_400;
+
+    private static final class Partition implements Serializable {
+        private static final long serialVersionUID = -5833024430730564407L;
+        long[] at = new long[4];
+        int[] codes = new int[12]; // medicine, dose (catalog codes), nurse per record
+        int size;
+
+        // Appends write past every earlier reader's bound; anything else goes into fresh arrays, so a view never sees a record move
+        void insert(long sec, int med, int dose, int nurse) {
+            int i = upperBound(sec);
+            if (i < size) {
+                long[] a = new long[Math.max(size * 2, 4)];
+                int[] c = new int[a.length * 3];
+                System.arraycopy(at, 0, a, 0, i);
+                System.arraycopy(at, i, a, i + 1, size - i);
+                System.arraycopy(codes, 0, c, 0, i * 3);
+                System.arraycopy(codes, i * 3, c, i * 3 + 3, (size - i) * 3);
+                at = a;
+                codes = c;
+            } else if (size == at.length) {
+                at = Arrays.copyOf(at, size * 2);
+                codes = Arrays.copyOf(codes, size * 6);
+            }
+            at[i] = sec;
+            codes[i * 3] = med; codes[i * 3 + 1] = dose; codes[i * 3 + 2] = nurse;
+            size++;
+        }
+
+        // First index whose time is after sec
+        int upperBound(long sec) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (at[mid] <= sec) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        // First index whose time is at or after sec
+        int lowerBound(long sec) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (at[mid] < sec) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            at = Arrays.copyOf(at, Math.max(size, 1));
+            codes = Arrays.copyOf(codes, Math.max(size, 1) * 3);
+            out.defaultWriteObject();
+        }
+    }
+
+    private final TreeMap<Long, Partition> days = new TreeMap<>();
+    private final ArrayList<String> nurses = new ArrayList<>();
+    private transient Map<String, Integer> codeOf;
+    private int size;
+
+    public void add(AdministrationRecord r) {
+        long sec = r.getAt().toEpochSecond(ZoneOffset.UTC);
+        days.computeIfAbsent(Math.floorDiv(sec, DAY), d -> new Partition())
+                .insert(sec, r.getMedicineCode(), r.getDoseCode(), nurseCode(r.getNurseId()));
+        size++;
+    }
+
+    public void addAll(Collection<AdministrationRecord> records) {
+        for (AdministrationRecord r : records) add(r);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Read-only list of every record in time order; later additions do not show up in it. */
+    public List<AdministrationRecord> view() {
+        return new View(new ArrayList<>(days.values()), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /** Records given in {@code [from, to)}, in time order, reading only the days in range. */
+    public List<AdministrationRecord> between(LocalDateTime from, LocalDateTime to) {
+        long lo = from.toEpochSecond(ZoneOffset.UTC), hi = to.toEpochSecond(ZoneOffset.UTC);
+        if (hi <= lo) return List.of();
+        Collection<Partition> range = days.subMap(Math.floorDiv(lo, DAY), true, Math.floorDiv(hi, DAY), true).values();
+        return new View(new ArrayList<>(range), lo, hi);
+    }
+
+    private int nurseCode(String s) {
+        if (codeOf == null) {
+            codeOf = new HashMap<>();
+            for (int i = 0; i < nurses.size(); i++) codeOf.put(nurses.get(i), i);
+        }
+        return codeOf.computeIfAbsent(s, k -> { nurses.add(k); return nurses.size() - 1; });
+    }
+
+    void recode(int[] med, int[] dose) {
+        for (Partition p : days.values())
+            for (int i = 0; i < p.size; i++) {
+                p.codes[i * 3] = med[p.codes[i * 3]];
+                p.codes[i * 3 + 1] = dose[p.codes[i * 3 + 1]];
+            }
+    }
+
+    /**
+     * A frozen slice over the partitions' live arrays, bounded by their sizes when it was taken, and
+     * decoded into records on access. Nothing is copied; see {@link Partition#insert}.
+     */
+    private final class View extends AbstractList<AdministrationRecord> implements RandomAccess {
+        private final long[][] ats;
+        private final int[][] codes;
+        private final int[] starts; // offset of each partition's first record within the view
+        private final int[] firsts; // first index used within each partition
+        private final String[] table;
+        private final int total;
+
+        View(List<Partition> source, long lo, long hi) {
+            ats = new long[source.size()][];
+            codes = new int[source.size()][];
+            starts = new int[source.size()];
+            firsts = new int[source.size()];
+            table = nurses.toArray(new String[0]);
+            int n = 0;
+            for (int i = 0; i < ats.length; i++) {
+                Partition p = source.get(i);
+                int first = p.lowerBound(lo), last = p.lowerBound(hi);
+                ats[i] = p.at;
+                codes[i] = p.codes;
+                starts[i] = n;
+                firsts[i] = first;
+                n += last - first;
+            }
+            total = n;
+        }
+
+        @Override public int size() { return total; }
+
+        @Override public AdministrationRecord get(int index) {
+            Objects.checkIndex(index, total);
+            int lo = 0, hi = ats.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (starts[mid] <= index) lo = mid; else hi = mid - 1;
+            }
+            int[] c = codes[lo];
+            int i = firsts[lo] + index - starts[lo];
+            return new AdministrationRecord(c[i * 3], c[i * 3 + 1],
+                    LocalDateTime.ofEpochSecond(ats[lo][i], 0, ZoneOffset.UTC), table[c[i * 3 + 2]]);
+        }
+    }
+}
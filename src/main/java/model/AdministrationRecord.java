@@ -5,12 +5,18 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 
 public class AdministrationRecord implements Serializable {
-    private final String medicine; private final String dose; private final LocalDateTime at; private final String nurseId;
+    private static final long serialVersionUID = 6191998318834707187L;
+    private int medicine; private int dose; private final LocalDateTime at; private final String nurseId;
     public AdministrationRecord(String medicine, String dose, LocalDateTime at, String nurseId){
+        this(DrugCatalog.MEDICINES.code(medicine), DrugCatalog.DOSES.code(dose), at, nurseId);
+    }
+    public AdministrationRecord(int medicine, int dose, LocalDateTime at, String nurseId){
         this.medicine=medicine; this.dose=dose; this.at=at; this.nurseId=nurseId;
     }
-    public String getMedicine(){ return medicine; }
-    public String getDose(){ return dose; }
+    public String getMedicine(){ return DrugCatalog.MEDICINES.name(medicine); }
+    public String getDose(){ return DrugCatalog.DOSES.name(dose); }
     public LocalDateTime getAt(){ return at; }
     public String getNurseId(){ return nurseId; }
+    public int getMedicineCode(){ return medicine; }
+    public int getDoseCode(){ return dose; }
 }
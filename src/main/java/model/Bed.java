@@ -4,11 +4,21 @@ package model;
 import java.io.Serializable;
 
 public class Bed implements Serializable {
-    private final String id; private Resident resident;
+    private static final long serialVersionUID = -6493773477213286086L;
+    private final String id; private volatile Resident resident;
+    private transient Room room;
     public Bed(String id){ this.id=id; }
     public String getId(){ return id; }
     public Resident getResident(){ return resident; }
+    public Room getRoom(){ return room; }
     public boolean isEmpty(){ return resident==null; }
-    public void assign(Resident r){ this.resident=r; }
-    public void vacate(){ this.resident=null; }
+    public void assign(Resident r){ changeTo(r); }
+    public void vacate(){ changeTo(null); }
+    void attach(Room r){ this.room=r; }
+
+    private void changeTo(Resident r){
+        Resident previous = resident;
+        this.resident=r;
+        if (room!=null && previous!=r) room.bedChanged(this, previous, r);
+    }
 }
@@ -1 +1 @@
-package model; public class Doctor extends Staff { public Doctor(String id,String u,String p){ super(id,u,p,Role.DOCTOR);} }
\ No newline at end of file
+package model; public class Doctor extends Staff { private static final long serialVersionUID = -1065166381136898787L; public Doctor(String id,String u,String p){ super(id,u,p,Role.DOCTOR);} }
\ No newline at end of file
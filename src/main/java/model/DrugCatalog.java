@@ -0,0 +1,96 @@
+package model;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Process-wide dictionaries of medicine names and doses. Each distinct entry
+ * gets a small integer code that orders and administration records store in
+ * place of the text. Entries are matched ignoring case and spacing and keep the
+ * spelling they were first entered with. A sorted key map gives prefix
+ * completion for the UI. Codes are only stable within one process; a store
+ * carries its own table (see {@link Codes}) and is recoded when read back.
+ */
+public class DrugCatalog {
+    public static final DrugCatalog MEDICINES = new DrugCatalog(false);
+    public static final DrugCatalog DOSES = new DrugCatalog(true);
+
+    private final boolean dropSpaces; // "500 mg" and "500mg" are the same dose
+    private final List<String> names = new ArrayList<>();
+    private final TreeMap<String, Integer> byKey = new TreeMap<>();
+
+    private DrugCatalog(boolean dropSpaces) {
+        this.dropSpaces = dropSpaces;
+    }
+
+    private String key(String text) {
+        String t = text.trim().toLowerCase(Locale.ROOT);
+        return dropSpaces ? t.replaceAll("\\s+", "") : t.replaceAll("\\s+", " ");
+    }
+
+    /** The code for {@code text}, adding it if it is new. */
+    public synchronized int code(String text) {
+        String k = key(text);
+        Integer c = byKey.get(k);
+        if (c != null) return c;
+        names.add(text.trim().replaceAll("\\s+", " "));
+        byKey.put(k, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    public synchronized String name(int code) {
+        return names.get(code);
+    }
+
+    /** The catalog spelling of {@code text}, or the trimmed text itself if it is not catalogued yet. */
+    public synchronized String canonical(String text) {
+        Integer c = byKey.get(key(text));
+        return c != null ? names.get(c) : text.trim();
+    }
+
+    /** Up to {@code limit} catalogued names starting with {@code prefix}, alphabetically. */
+    public synchronized List<String> complete(String prefix, int limit) {
+        String k = key(prefix);
+        List<String> out = new ArrayList<>();
+        for (int c : byKey.subMap(k, true, k + Character.MAX_VALUE, false).values()) {
+            if (out.size() == limit) break;
+            out.add(names.get(c));
+        }
+        return out;
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    synchronized List<String> names() {
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Both catalogs as written with a store. Written after the residents, so it
+     * covers every code they use; once read back, {@link #applyTo} moves their
+     * orders and records onto this process's codes.
+     */
+    public static final class Codes implements Serializable {
+        private static final long serialVersionUID = -8587073449479027509L;
+        private final List<String> medicines = MEDICINES.names(), doses = DOSES.names();
+
+        public void applyTo(Collection<Resident> residents) {
+            int[] med = MEDICINES.adopt(medicines), dose = DOSES.adopt(doses);
+            if (identity(med) && identity(dose)) return; // written by this process, or one that agreed
+            for (Resident r : residents) r.recode(med, dose);
+        }
+    }
+
+    private int[] adopt(List<String> stored) {
+        int[] map = new int[stored.size()];
+        for (int i = 0; i < map.length; i++) map[i] = code(stored.get(i));
+        return map;
+    }
+
+    private static boolean identity(int[] map) {
+        for (int i = 0; i < map.length; i++) if (map[i] != i) return false;
+        return true;
+    }
+}
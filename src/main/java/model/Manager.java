@@ -1 +1 @@
-package model; public class Manager extends Staff { public Manager(String id,String u,String p){ super(id,u,p,Role.MANAGER);} }
\ No newline at end of file
+package model; public class Manager extends Staff { private static final long serialVersionUID = -2233937549603065767L; public Manager(String id,String u,String p){ super(id,u,p,Role.MANAGER);} }
\ No newline at end of file
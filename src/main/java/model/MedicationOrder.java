@@ -5,11 +5,18 @@ import java.io.Serializable;
 import java.time.LocalTime;
 
 public class MedicationOrder implements Serializable {
-    private final String medicine; private final String dose; private final LocalTime time;
+    private static final long serialVersionUID = -3796228342161424969L;
+    private int medicine; private int dose; private final LocalTime time;
     public MedicationOrder(String medicine, String dose, LocalTime time){
+        this(DrugCatalog.MEDICINES.code(medicine), DrugCatalog.DOSES.code(dose), time);
+    }
+    public MedicationOrder(int medicine, int dose, LocalTime time){
         this.medicine=medicine; this.dose=dose; this.time=time;
     }
-    public String getMedicine(){ return medicine; }
-    public String getDose(){ return dose; }
+    public String getMedicine(){ return DrugCatalog.MEDICINES.name(medicine); }
+    public String getDose(){ return DrugCatalog.DOSES.name(dose); }
     public LocalTime getTime(){ return time; }
+    public int getMedicineCode(){ return medicine; }
+    public int getDoseCode(){ return dose; }
+    void recode(int[] med, int[] doses){ medicine=med[medicine]; dose=doses[dose]; }
 }
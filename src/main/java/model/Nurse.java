@@ -1 +1 @@
-package model; public class Nurse extends Staff { public Nurse(String id,String u,String p){ super(id,u,p,Role.NURSE);} }
\ No newline at end of file
+package model; public class Nurse extends Staff { private static final long serialVersionUID = -626596194890519015L; public Nurse(String id,String u,String p){ super(id,u,p,Role.NURSE);} }
\ No newline at end of file
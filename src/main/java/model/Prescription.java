@@ -6,6 +6,7 @@ import java.time.LocalDateTime;
 import java.util.*;
 
 public class Prescription implements Serializable {
+    private static final long serialVersionUID = -2752716085786295585L;
     private final String id; private final String doctorId; private final LocalDateTime createdAt;
     private final List<MedicationOrder> orders = new ArrayList<>();
     public Prescription(String id, String doctorId, LocalDateTime createdAt){
@@ -14,6 +15,7 @@ public class Prescription implements Serializable {
     public String getId(){ return id; }
     public String getDoctorId(){ return doctorId; }
     public LocalDateTime getCreatedAt(){ return createdAt; }
-    public List<MedicationOrder> getOrders(){ return orders; }
-    public void addOrder(MedicationOrder o){ orders.add(o); }
+    public synchronized List<MedicationOrder> getOrders(){ return List.copyOf(orders); }
+    public synchronized void addOrder(MedicationOrder o){ orders.add(o); }
+    synchronized void recode(int[] med, int[] dose){ for (MedicationOrder o : orders) o.recode(med, dose); }
 }
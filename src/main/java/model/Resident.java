@@ -1,13 +1,21 @@
 
 package model;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 public class Resident implements Serializable {
+    private static final long serialVersionUID = 429585606409296654L;
     private final String id; private final String name; private final Gender gender; private final boolean isolation;
     private final List<Prescription> prescriptions = new ArrayList<>();
-    private final List<AdministrationRecord> administrations = new ArrayList<>();
+    private final AdministrationHistory administrations = new AdministrationHistory();
+    // Set by backends that load prescriptions and administration history on first access
+    private transient Supplier<List<Prescription>> prescriptionLoader;
+    private transient Supplier<List<AdministrationRecord>> administrationLoader;
 
     public Resident(String id, String name, Gender gender, boolean isolation){
         this.id=id; this.name=name; this.gender=gender; this.isolation=isolation;
@@ -16,8 +24,38 @@ public class Resident implements Serializable {
     public String getName(){ return name; }
     public Gender getGender(){ return gender; }
     public boolean isIsolation(){ return isolation; }
-    public List<Prescription> getPrescriptions(){ return prescriptions; }
-    public List<AdministrationRecord> getAdministrations(){ return administrations; }
-    public void addPrescription(Prescription p){ prescriptions.add(p); }
-    public void addAdministration(AdministrationRecord r){ administrations.add(r); }
+    // Getters return snapshots so callers can iterate while other threads add records
+    public synchronized List<Prescription> getPrescriptions(){ loadPrescriptions(); return List.copyOf(prescriptions); }
+    public synchronized List<AdministrationRecord> getAdministrations(){ loadAdministrations(); return administrations.view(); }
+    /** Doses given in {@code [from, to)}, e.g. the last 24 hours, without walking the whole history. */
+    public synchronized List<AdministrationRecord> getAdministrationsBetween(LocalDateTime from, LocalDateTime to){ loadAdministrations(); return administrations.between(from, to); }
+    public synchronized void addPrescription(Prescription p){ loadPrescriptions(); prescriptions.add(p); }
+    public synchronized void addAdministration(AdministrationRecord r){ loadAdministrations(); administrations.add(r); }
+    public synchronized void setPrescriptionLoader(Supplier<List<Prescription>> loader){ this.prescriptionLoader=loader; }
+    public synchronized void setAdministrationLoader(Supplier<List<AdministrationRecord>> loader){ this.administrationLoader=loader; }
+
+    synchronized void recode(int[] med, int[] dose){
+        for (Prescription p : prescriptions) p.recode(med, dose);
+        administrations.recode(med, dose);
+    }
+
+    private void loadPrescriptions(){
+        if (prescriptionLoader == null) return;
+        Supplier<List<Prescription>> loader = prescriptionLoader;
+        prescriptionLoader = null;
+        prescriptions.addAll(loader.get());
+    }
+
+    private void loadAdministrations(){
+        if (administrationLoader == null) return;
+        Supplier<List<AdministrationRecord>> loader = administrationLoader;
+        administrationLoader = null;
+        administrations.addAll(loader.get());
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        loadPrescriptions();
+        loadAdministrations();
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,70 @@
+
+package model;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A group of beds sharing a room. Keeps its occupancy counts current as beds are
+ * assigned and vacated, and tells its listeners so indexes can re-bucket it.
+ * Bed changes are made while holding the room's monitor.
+ */
+public class Room {
+    public enum Occupancy {
+        EMPTY, MALE, FEMALE, MIXED;
+        public static Occupancy of(Gender g){ return g==Gender.MALE ? MALE : FEMALE; }
+    }
+
+    public interface Listener {
+        void bedChanged(Room room, Bed bed, Resident previous, Resident current);
+    }
+
+    private final String wardId; private final int ordinal;
+    private final List<Bed> beds;
+    private int occupied, male, female;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public Room(String wardId, int ordinal, List<Bed> beds){
+        this.wardId=wardId; this.ordinal=ordinal; this.beds=new ArrayList<>(beds);
+        for (Bed b : this.beds){
+            b.attach(this);
+            if (!b.isEmpty()) count(b.getResident(), 1);
+        }
+    }
+
+    public String getWardId(){ return wardId; }
+    public int getOrdinal(){ return ordinal; }
+    public int size(){ return beds.size(); }
+    public List<Bed> getBeds(){ return Collections.unmodifiableList(beds); }
+    public int getOccupied(){ return occupied; }
+    public boolean hasVacancy(){ return occupied < beds.size(); }
+    public boolean isEmpty(){ return occupied == 0; }
+    public boolean isIsolationEligible(){ return occupied == 0 && beds.size() <= 2; }
+
+    public Occupancy occupancy(){
+        if (occupied == 0) return Occupancy.EMPTY;
+        if (male == occupied) return Occupancy.MALE;
+        if (female == occupied) return Occupancy.FEMALE;
+        return Occupancy.MIXED;
+    }
+
+    public Bed firstVacantBed(){
+        for (Bed b : beds) if (b.isEmpty()) return b;
+        return null;
+    }
+
+    public void addListener(Listener l){ listeners.add(l); }
+
+    void bedChanged(Bed bed, Resident previous, Resident current){
+        if (previous != null) count(previous, -1);
+        if (current != null) count(current, 1);
+        for (Listener l : listeners) l.bedChanged(this, bed, previous, current);
+    }
+
+    private void count(Resident r, int delta){
+        occupied += delta;
+        if (r.getGender() == Gender.MALE) male += delta; else female += delta;
+    }
+
+    @Override public String toString(){ return wardId+" room "+ordinal+" ("+beds.size()+" beds)"; }
+}
@@ -0,0 +1,62 @@
+
+package model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * A staff member's shifts compiled into merged, sorted intervals per day
+ * (nano-of-day, both ends inclusive like {@link Shift#contains}). A shift that
+ * ends before it starts runs past midnight and is split across two days.
+ * Lookups are a binary search over that day's intervals.
+ */
+public final class RosterIndex {
+    private static final long END_OF_DAY = 24L * 60 * 60 * 1_000_000_000L - 1;
+
+    private final long[][] starts = new long[7][];
+    private final long[][] ends = new long[7][];
+
+    private RosterIndex(){}
+
+    public static RosterIndex compile(Collection<Shift> shifts){
+        List<List<long[]>> byDay = new ArrayList<>();
+        for (int d = 0; d < 7; d++) byDay.add(new ArrayList<>());
+        for (Shift s : shifts){
+            int day = s.getDay().getValue() - 1;
+            long start = s.getStart().toNanoOfDay(), end = s.getEnd().toNanoOfDay();
+            if (s.crossesMidnight()){
+                byDay.get(day).add(new long[]{start, END_OF_DAY});
+                byDay.get((day + 1) % 7).add(new long[]{0, end});
+            } else {
+                byDay.get(day).add(new long[]{start, end});
+            }
+        }
+        RosterIndex idx = new RosterIndex();
+        for (int d = 0; d < 7; d++){
+            List<long[]> list = byDay.get(d);
+            list.sort(Comparator.comparingLong(iv -> iv[0]));
+            List<long[]> merged = new ArrayList<>();
+            for (long[] iv : list){
+                long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && iv[0] <= last[1] + 1) last[1] = Math.max(last[1], iv[1]);
+                else merged.add(new long[]{iv[0], iv[1]});
+            }
+            idx.starts[d] = new long[merged.size()];
+            idx.ends[d] = new long[merged.size()];
+            for (int i = 0; i < merged.size(); i++){ idx.starts[d][i] = merged.get(i)[0]; idx.ends[d][i] = merged.get(i)[1]; }
+        }
+        return idx;
+    }
+
+    public boolean covers(LocalDateTime dt){
+        return covers(dt.getDayOfWeek(), dt.toLocalTime().toNanoOfDay());
+    }
+
+    private boolean covers(DayOfWeek day, long t){
+        long[] s = starts[day.getValue() - 1];
+        int i = Arrays.binarySearch(s, t);
+        if (i < 0) i = -i - 2; // last interval starting before t
+        return i >= 0 && t <= ends[day.getValue() - 1][i];
+    }
+}
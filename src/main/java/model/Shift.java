@@ -6,6 +6,7 @@ import java.time.DayOfWeek;
 import java.time.LocalTime;
 
 public class Shift implements Serializable {
+    private static final long serialVersionUID = 579952926062280081L;
     private final DayOfWeek day;
     private final LocalTime start;
     private final LocalTime end;
@@ -17,6 +18,8 @@ public class Shift implements Serializable {
     public LocalTime getStart(){ return start; }
     public LocalTime getEnd(){ return end; }
     public boolean contains(LocalTime t){ return !t.isBefore(start) && !t.isAfter(end); }
-    public int hours(){ return end.getHour()-start.getHour(); }
+    /** True for overnight shifts such as 22:00-06:00, which end on the following day. */
+    public boolean crossesMidnight(){ return end.isBefore(start); }
+    public int hours(){ return crossesMidnight() ? end.getHour()+24-start.getHour() : end.getHour()-start.getHour(); }
     @Override public String toString(){ return day+" "+start+"-"+end; }
 }
@@ -6,11 +6,14 @@ import java.time.LocalDateTime;
 import java.util.*;
 
 public abstract class Staff implements Serializable {
+    private static final long serialVersionUID = 6685728881686977901L;
     protected final String id;
     protected String username;
     protected String password;
     protected final Role role;
     protected final List<Shift> shifts = new ArrayList<>();
+    // Compiled from shifts on first roster check after a change
+    private transient volatile RosterIndex roster;
 
     public Staff(String id, String username, String password, Role role){
         this.id=id; this.username=username; this.password=password; this.role=role;
@@ -18,11 +21,16 @@ public abstract class Staff implements Serializable {
     public String getId(){ return id; }
     public String getUsername(){ return username; }
     public Role getRole(){ return role; }
-    public boolean credentialsMatch(String u, String p){ return Objects.equals(username,u) && Objects.equals(password,p); }
-    public void setPassword(String p){ this.password=p; }
-    public void assignShift(Shift s){ shifts.add(s); }
-    public List<Shift> getShifts(){ return Collections.unmodifiableList(shifts); }
+    public synchronized String getPassword(){ return password; }
+    public synchronized boolean credentialsMatch(String u, String p){ return Objects.equals(username,u) && Objects.equals(password,p); }
+    public synchronized void setPassword(String p){ this.password=p; }
+    public synchronized void assignShift(Shift s){ shifts.add(s); roster=null; }
+    public synchronized List<Shift> getShifts(){ return List.copyOf(shifts); }
     public boolean isRostered(LocalDateTime dt){
-        return shifts.stream().anyMatch(s -> s.getDay()==dt.getDayOfWeek() && s.contains(dt.toLocalTime()));
+        RosterIndex r = roster;
+        if (r == null) {
+            synchronized (this) { roster = r = RosterIndex.compile(shifts); }
+        }
+        return r.covers(dt);
     }
 }
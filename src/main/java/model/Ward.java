@@ -5,6 +5,7 @@ import java.io.Serializable;
 import java.util.*;
 
 public class Ward implements Serializable {
+    private static final long serialVersionUID = -4023691156719145440L;
     private final String id; private final boolean malePreferred;
     private final List<Bed> beds = new ArrayList<>();
     public Ward(String id, boolean malePreferred){ this.id=id; this.malePreferred=malePreferred; }
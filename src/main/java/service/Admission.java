@@ -0,0 +1,52 @@
+package service;
+
+import model.Gender;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** One incoming resident of a bulk admission. */
+public class Admission {
+    private final String name; private final Gender gender; private final boolean isolation;
+    public Admission(String name, Gender gender, boolean isolation) {
+        this.name = name; this.gender = gender; this.isolation = isolation;
+    }
+    public String getName() { return name; }
+    public Gender getGender() { return gender; }
+    public boolean isIsolation() { return isolation; }
+
+    /**
+     * Reads {@code name,gender,isolation} lines, e.g. {@code Jane Doe,FEMALE,false}.
+     * A header line, blank lines and {@code #} comments are skipped; the name may
+     * itself contain commas.
+     */
+    public static List<Admission> readCsv(Path file) throws IOException {
+        List<Admission> out = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            for (int n = 1; (line = in.readLine()) != null; n++) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split(",", -1);
+                if (n == 1 && f[0].equalsIgnoreCase("name")) continue;
+                if (f.length < 3) throw new IOException(file + " line " + n + ": expected name,gender,isolation");
+                String name = String.join(",", List.of(f).subList(0, f.length - 2)).strip();
+                String gender = f[f.length - 2].strip().toUpperCase(), iso = f[f.length - 1].strip().toLowerCase();
+                if (name.isEmpty()) throw new IOException(file + " line " + n + ": name is empty");
+                if (!gender.equals("MALE") && !gender.equals("FEMALE"))
+                    throw new IOException(file + " line " + n + ": gender must be MALE or FEMALE");
+                if (!iso.equals("true") && !iso.equals("false"))
+                    throw new IOException(file + " line " + n + ": isolation must be true or false");
+                out.add(new Admission(name, Gender.valueOf(gender), Boolean.parseBoolean(iso)));
+            }
+        }
+        return out;
+    }
+
+    @Override public String toString() { return name + " (" + gender + (isolation ? ", isolation" : "") + ")"; }
+}
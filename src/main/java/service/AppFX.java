@@ -11,11 +11,16 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import model.*;
 
+import java.io.IOException;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalTime;
 
 public class AppFX extends Application {
-    private final CareHomeService svc = CareHomeService.get();
+    // The facility logged into; the default one until then
+    private CareHomeService svc = CareHomeService.get();
+    // How long after the first unsaved change the store is written in the background
+    private static final Duration AUTOSAVE_DELAY = Duration.ofSeconds(2);
 
     @Override
     public void start(Stage stage){
@@ -27,17 +32,22 @@ public class AppFX extends Application {
         VBox box = new VBox(10); box.setPadding(new Insets(20)); box.setAlignment(Pos.CENTER);
         TextField user = new TextField(); user.setPromptText("Username");
         PasswordField pass = new PasswordField(); pass.setPromptText("Password");
+        ComboBox<String> facility = new ComboBox<>();
+        facility.getItems().addAll(CareHomeGroup.get().facilityIds());
+        facility.setValue(CareHomeGroup.DEFAULT);
         Button login = new Button("Login"); Label msg = new Label();
-        box.getChildren().addAll(new Label("RMIT Care Home Login"), user, pass, login, msg);
+        box.getChildren().addAll(new Label("RMIT Care Home Login"), facility, user, pass, login, msg);
         root.setCenter(box);
 
         login.setOnAction(e -> {
             try {
-                svc.login(user.getText(), pass.getText());
-                // ⬇️ Load persisted data here before showing MainView
-                try { svc.load(); } catch (Exception loadEx) { System.out.println("No previous data found or failed to load: " + loadEx.getMessage()); }
-                
-                new MainView().show(stage);
+                // The facility's saved store is opened on first use, so this checks its saved accounts
+                CareHomeService chosen = CareHomeGroup.get().facility(facility.getValue());
+                chosen.login(user.getText(), pass.getText());
+                svc = chosen;
+                svc.autosave().start(AUTOSAVE_DELAY);
+
+                new MainView(svc).show(stage);
             } catch (Exception ex) {
                 msg.setText("Login failed: " + ex.getMessage());
             }
@@ -46,8 +56,9 @@ public class AppFX extends Application {
         // seed a nurse and doctor on first run with shifts (and a copy of manager if needed)
         if (svc.getStaff().size() <= 1){
             try {
-                // temporary elevate to allow seeding
-                Session.get().setCurrentUser(new Manager("seed","seed","seed"));
+                // temporary elevate to allow seeding, as this facility's own manager
+                Staff mgr = svc.getStaff().stream().filter(st -> st.getRole() == Role.MANAGER).findFirst().orElseThrow();
+                Session.get().setCurrentUser(mgr);
                 Nurse n = svc.createNurse("nurse", "password");
                 Doctor d = svc.createDoctor("doctor", "password");
                 Manager m = svc.createManager("manager2","password");
@@ -66,5 +77,15 @@ public class AppFX extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop(){
+        try {
+            CareHomeGroup.get().closeAll();
+        } catch (IOException e) {
+            System.err.println("Could not close every facility: " + e.getMessage());
+        }
+        AuditLog.shutdown();
+    }
+
     public static void main(String[] args){ launch(args); }
 }
@@ -0,0 +1,272 @@
+package service;
+
+import model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read side of the discharge archive. Opening loads only the index sidecars;
+ * lookups by id, name, medicine or nurse are answered from them, and a record is
+ * inflated from its memory-mapped segment only when it is actually needed.
+ * Scans stream one resident at a time. The reader sees the archive as it was
+ * when opened.
+ */
+public class ArchiveReader implements Closeable {
+
+    /** What the index knows about one archived resident. */
+    public static final class Entry {
+        final String residentId, name; final int segment; final long offset; final int length;
+        final LocalDateTime firstGiven, lastGiven; final Set<String> medicines, nurses;
+        Entry(String residentId, String name, int segment, long offset, int length,
+              LocalDateTime firstGiven, LocalDateTime lastGiven, Set<String> medicines, Set<String> nurses) {
+            this.residentId = residentId; this.name = name; this.segment = segment; this.offset = offset; this.length = length;
+            this.firstGiven = firstGiven; this.lastGiven = lastGiven; this.medicines = medicines; this.nurses = nurses;
+        }
+        public String getResidentId() { return residentId; }
+        public String getName() { return name; }
+        /** Earliest and latest administration, or null when none was recorded. */
+        public LocalDateTime getFirstGiven() { return firstGiven; }
+        public LocalDateTime getLastGiven() { return lastGiven; }
+        public Set<String> getMedicines() { return medicines; }
+        public Set<String> getNurses() { return nurses; }
+    }
+
+    /** An administration row of an archived resident. */
+    public static final class Administration {
+        private final String residentId; private final AdministrationRecord record;
+        Administration(String residentId, AdministrationRecord record) { this.residentId = residentId; this.record = record; }
+        public String getResidentId() { return residentId; }
+        public AdministrationRecord getRecord() { return record; }
+    }
+
+    private final Path dir;
+    private final Map<String, Entry> byId = new HashMap<>();
+    private final Map<String, List<Entry>> byName = new HashMap<>();
+    private final Map<String, List<Entry>> byMedicine = new HashMap<>();
+    private final Map<String, List<Entry>> byNurse = new HashMap<>();
+    private final Map<Integer, MappedByteBuffer> segments = new HashMap<>();
+    private final Inflater inflater = new Inflater();
+
+    public ArchiveReader(Path dir) throws IOException {
+        this.dir = dir;
+        if (!Files.isDirectory(dir)) return;
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "segment-*.idx")) {
+            for (Path p : ds) numbers.add(ArchiveWriter.segmentNumber(p));
+        }
+        Collections.sort(numbers);
+        for (int n : numbers) readIndex(n);
+        // A resident archived twice keeps only its latest record
+        for (Map<String, List<Entry>> m : List.of(byName, byMedicine, byNurse))
+            for (List<Entry> list : m.values()) list.removeIf(e -> byId.get(e.residentId) != e);
+    }
+
+    private void readIndex(int n) throws IOException {
+        Path p = ArchiveWriter.indexPath(dir, n);
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            int version = ArchiveWriter.readVersion(ch, p, ArchiveWriter.INDEX_MAGIC);
+            if (version != ArchiveWriter.VERSION)
+                throw new IOException(p + " has unsupported archive version " + version);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            map.position(ArchiveWriter.HEADER_BYTES);
+            DataInputStream in = new DataInputStream(new BufferInput(map));
+            while (map.hasRemaining()) {
+                Entry e;
+                try {
+                    String id = in.readUTF();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    String name = in.readUTF();
+                    long first = in.readLong(), last = in.readLong();
+                    Set<String> medicines = readStrings(in), nurses = readStrings(in);
+                    e = new Entry(id, name, n, offset, length, time(first, Long.MAX_VALUE), time(last, Long.MIN_VALUE),
+                            medicines, nurses);
+                } catch (EOFException torn) {
+                    break; // entry cut short by a crash; its record is unreachable
+                }
+                add(e);
+            }
+        }
+    }
+
+    private void add(Entry e) {
+        byId.put(e.residentId, e);
+        byName.computeIfAbsent(e.name.toLowerCase(), k -> new ArrayList<>()).add(e);
+        for (String m : e.medicines) byMedicine.computeIfAbsent(m.toLowerCase(), k -> new ArrayList<>()).add(e);
+        for (String nurse : e.nurses) byNurse.computeIfAbsent(nurse, k -> new ArrayList<>()).add(e);
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        Set<String> s = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) s.add(in.readUTF());
+        return Collections.unmodifiableSet(s);
+    }
+
+    private static LocalDateTime time(long epochSecond, long none) {
+        return epochSecond == none ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public Optional<Entry> entry(String residentId) {
+        return Optional.ofNullable(byId.get(residentId));
+    }
+
+    /** The archived resident with prescriptions and administrations, read back from its segment. */
+    public synchronized Optional<Resident> find(String residentId) throws IOException {
+        Entry e = byId.get(residentId);
+        return e == null ? Optional.empty() : Optional.of(decode(e));
+    }
+
+    public List<Entry> findByName(String name) {
+        return matches(byName, name.toLowerCase());
+    }
+
+    public List<Entry> findByMedicine(String medicine) {
+        return matches(byMedicine, medicine.toLowerCase());
+    }
+
+    public List<Entry> findByNurse(String nurseId) {
+        return matches(byNurse, nurseId);
+    }
+
+    private List<Entry> matches(Map<String, List<Entry>> index, String key) {
+        List<Entry> out = new ArrayList<>(index.getOrDefault(key, List.of()));
+        out.sort(ArchiveReader::inFileOrder);
+        return out;
+    }
+
+    private static int inFileOrder(Entry a, Entry b) {
+        return a.segment != b.segment ? Integer.compare(a.segment, b.segment) : Long.compare(a.offset, b.offset);
+    }
+
+    /**
+     * Streams every archived resident accepted by {@code filter}, in archive
+     * order, decoding one record at a time. Close the stream when done.
+     */
+    public Stream<Resident> scan(Predicate<Entry> filter) {
+        List<Entry> all = new ArrayList<>(byId.values());
+        all.sort(ArchiveReader::inFileOrder);
+        return all.stream().filter(filter).map(this::decodeUnchecked);
+    }
+
+    /**
+     * Administration rows for {@code medicine} (any medicine if null) given within
+     * {@code [from, to)}, skipping residents whose index summary rules them out.
+     */
+    public Stream<Administration> administrations(String medicine, LocalDateTime from, LocalDateTime to) {
+        Stream<Entry> candidates = medicine == null
+                ? byId.values().stream()
+                : findByMedicine(medicine).stream();
+        return candidates
+                // The summary is kept to the second, so widen its end by one
+                .filter(e -> e.firstGiven != null && e.firstGiven.isBefore(to) && e.lastGiven.plusSeconds(1).isAfter(from))
+                .sorted(ArchiveReader::inFileOrder)
+                .map(this::decodeUnchecked)
+                .flatMap(r -> r.getAdministrations().stream()
+                        .filter(a -> medicine == null || a.getMedicine().equalsIgnoreCase(medicine))
+                        .filter(a -> !a.getAt().isBefore(from) && a.getAt().isBefore(to))
+                        .map(a -> new Administration(r.getId(), a)));
+    }
+
+    private Resident decodeUnchecked(Entry e) {
+        try {
+            synchronized (this) {
+                return decode(e);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Resident decode(Entry e) throws IOException {
+        ByteBuffer seg = segment(e.segment, e.offset + e.length);
+        ByteBuffer rec = seg.duplicate();
+        rec.position((int) e.offset + 4).limit((int) (e.offset + e.length));
+        inflater.reset();
+        inflater.setInput(rec);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(e.length * 4);
+        byte[] buf = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("Archive record for " + e.residentId + " is truncated");
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Archive record for " + e.residentId + " is corrupt", ex);
+        }
+        return parse(out.toString(StandardCharsets.UTF_8));
+    }
+
+    private ByteBuffer segment(int n, long needed) throws IOException {
+        MappedByteBuffer map = segments.get(n);
+        if (map == null || map.capacity() < needed) {
+            Path p = ArchiveWriter.segmentPath(dir, n);
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                if (ch.size() < needed) throw new IOException(p + " is shorter than its index");
+                map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            segments.put(n, map);
+        }
+        return map;
+    }
+
+    // Inverse of ArchiveUtil.toCsv; a name may itself contain commas
+    static Resident parse(String csv) {
+        Resident r = null;
+        Prescription current = null;
+        for (String line : csv.split("\n")) {
+            String[] f = line.split(",", -1);
+            switch (f[0]) {
+                case "Resident" -> {
+                    String name = String.join(",", Arrays.copyOfRange(f, 2, f.length - 2));
+                    r = new Resident(f[1], name, Gender.valueOf(f[f.length - 2]),
+                            Boolean.parseBoolean(f[f.length - 1].substring("isolation=".length())));
+                }
+                case "Prescription" -> {
+                    current = new Prescription(f[1], f[2], LocalDateTime.parse(f[3]));
+                    r.addPrescription(current);
+                }
+                case "MedicationOrder" -> current.addOrder(new MedicationOrder(f[1], f[2], LocalTime.parse(f[3])));
+                case "Administration" -> r.addAdministration(
+                        new AdministrationRecord(f[1], f[2], LocalDateTime.parse(f[3]), f[4]));
+                default -> { }
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.clear(); // mappings are released once unreachable
+        inflater.end();
+    }
+
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buf;
+        BufferInput(ByteBuffer buf) { this.buf = buf; }
+        @Override public int read() { return buf.hasRemaining() ? buf.get() & 0xff : -1; }
+        @Override public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -3,22 +3,59 @@ package service;
 
 import model.*;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
 
 public class ArchiveUtil {
+    private static Path directory = Paths.get("");
+    private static ArchiveWriter writer;
+
+    /** Keeps the archive under {@code dir}/archive, picking up any old {@code archive_*.csv} files in {@code dir}. */
+    public static synchronized void configure(Path dir) throws IOException {
+        if (writer != null) writer.close();
+        writer = null;
+        directory = dir;
+    }
+
     public static void archiveResident(Resident r) throws IOException {
-        try (FileWriter fw = new FileWriter("archive_"+r.getId()+".csv")) {
-            fw.write("Resident,"+r.getId()+","+r.getName()+","+r.getGender()+",isolation="+r.isIsolation()+"\n");
-            for (Prescription p: r.getPrescriptions()){
-                fw.write("Prescription,"+p.getId()+","+p.getDoctorId()+","+p.getCreatedAt()+"\n");
-                for (MedicationOrder o: p.getOrders()){
-                    fw.write("MedicationOrder,"+o.getMedicine()+","+o.getDose()+","+o.getTime()+"\n");
-                }
-            }
-            for (AdministrationRecord a: r.getAdministrations()){
-                fw.write("Administration,"+a.getMedicine()+","+a.getDose()+","+a.getAt()+","+a.getNurseId()+"\n");
+        archiveResidents(List.of(r));
+    }
+
+    /** Appends all residents to the current archive segment in one write. */
+    public static synchronized void archiveResidents(Collection<Resident> residents) throws IOException {
+        writer().append(residents);
+    }
+
+    /** A reader over everything archived so far. */
+    public static synchronized ArchiveReader reader() throws IOException {
+        writer();
+        return new ArchiveReader(directory.resolve("archive"));
+    }
+
+    // Opened on first use, which is also when the one-file-per-resident CSVs of older versions move into it
+    private static ArchiveWriter writer() throws IOException {
+        if (writer == null) {
+            writer = new ArchiveWriter(directory.resolve("archive"), ArchiveWriter.SEGMENT_BYTES);
+            writer.importLegacy(directory);
+        }
+        return writer;
+    }
+
+    static String toCsv(Resident r) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("Resident,"+r.getId()+","+r.getName()+","+r.getGender()+",isolation="+r.isIsolation()+"\n");
+        for (Prescription p: r.getPrescriptions()){
+            sb.append("Prescription,"+p.getId()+","+p.getDoctorId()+","+p.getCreatedAt()+"\n");
+            for (MedicationOrder o: p.getOrders()){
+                sb.append("MedicationOrder,"+o.getMedicine()+","+o.getDose()+","+o.getTime()+"\n");
             }
         }
+        for (AdministrationRecord a: r.getAdministrations()){
+            sb.append("Administration,"+a.getMedicine()+","+a.getDose()+","+a.getAt()+","+a.getNurseId()+"\n");
+        }
+        return sb.toString();
     }
 }
@@ -0,0 +1,205 @@
+package service;
+
+import model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only archive of discharged residents in rolling segment files. A record
+ * is {@code [length][deflated CSV export]}; each {@code segment-N.dat} has a
+ * {@code segment-N.idx} sidecar listing {@code (resident id, offset, length)},
+ * the name, the administration time range and the medicines and nurses the
+ * record mentions, so {@link ArchiveReader} can pick candidates without
+ * inflating records. Both files start with a magic number and
+ * format version. The index is written after its records are forced, so it
+ * never points past what reached the segment.
+ */
+class ArchiveWriter implements Closeable {
+    static final int SEGMENT_MAGIC = 0x43485341; // "CHSA"
+    static final int INDEX_MAGIC = 0x43485349;   // "CHSI"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final long SEGMENT_BYTES = 8L << 20;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private FileChannel segment, index;
+    private int segmentNo;
+
+    ArchiveWriter(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+        int last = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "segment-*.dat")) {
+            for (Path p : ds) last = Math.max(last, segmentNumber(p));
+        }
+        if (last == 0) roll();
+        else open(last);
+    }
+
+    static Path segmentPath(Path dir, int n) {
+        return dir.resolve(String.format("segment-%06d.dat", n));
+    }
+
+    static Path indexPath(Path dir, int n) {
+        return dir.resolve(String.format("segment-%06d.idx", n));
+    }
+
+    static int segmentNumber(Path p) {
+        String name = p.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.indexOf('.')));
+    }
+
+    /** Archives the residents in one sequential pass, forcing the segment and then the index once per file. */
+    synchronized void append(Collection<Resident> residents) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream rec = new DataOutputStream(records);
+        DataOutputStream idx = new DataOutputStream(entries);
+        for (Resident r : residents) {
+            byte[] payload = deflate(ArchiveUtil.toCsv(r).getBytes(StandardCharsets.UTF_8));
+            long end = segment.size() + records.size();
+            if (end > HEADER_BYTES && end + 4 + payload.length > segmentBytes) {
+                write(records, entries);
+                roll();
+            }
+            long offset = segment.size() + records.size();
+            rec.writeInt(payload.length);
+            rec.write(payload);
+            idx.writeUTF(r.getId());
+            idx.writeLong(offset);
+            idx.writeInt(4 + payload.length);
+            writeSummary(idx, r);
+        }
+        write(records, entries);
+        index.force(false);
+    }
+
+    /**
+     * Appends the {@code archive_<id>.csv} files older versions wrote into {@code dir}, then deletes
+     * them once the segment holding them is on disk. Files that do not parse are left alone.
+     */
+    synchronized void importLegacy(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<Resident> residents = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "archive_*.csv")) {
+            for (Path p : ds) {
+                Resident r;
+                try {
+                    r = ArchiveReader.parse(Files.readString(p, StandardCharsets.UTF_8).replace("\r", ""));
+                } catch (RuntimeException e) {
+                    r = null;
+                }
+                if (r == null) {
+                    System.err.println("Left " + p + " in place, it is not an archived resident");
+                    continue;
+                }
+                files.add(p);
+                residents.add(r);
+            }
+        }
+        if (residents.isEmpty()) return;
+        append(residents); // forces the segment and its index
+        FileUtil.forceDirectory(this.dir); // and their names, should either file be new
+        for (Path p : files) Files.delete(p);
+    }
+
+    private static void writeSummary(DataOutputStream idx, Resident r) throws IOException {
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        Set<String> medicines = new TreeSet<>(), nurses = new TreeSet<>();
+        for (Prescription p : r.getPrescriptions())
+            for (MedicationOrder o : p.getOrders()) medicines.add(o.getMedicine());
+        for (AdministrationRecord a : r.getAdministrations()) {
+            long at = a.getAt().toEpochSecond(ZoneOffset.UTC);
+            first = Math.min(first, at);
+            last = Math.max(last, at);
+            medicines.add(a.getMedicine());
+            nurses.add(a.getNurseId());
+        }
+        idx.writeUTF(r.getName());
+        idx.writeLong(first);
+        idx.writeLong(last);
+        idx.writeShort(medicines.size());
+        for (String m : medicines) idx.writeUTF(m);
+        idx.writeShort(nurses.size());
+        for (String n : nurses) idx.writeUTF(n);
+    }
+
+    // The records are on disk before any index entry that points at them is written
+    private void write(ByteArrayOutputStream records, ByteArrayOutputStream entries) throws IOException {
+        writeFully(segment, records.toByteArray());
+        segment.force(false);
+        writeFully(index, entries.toByteArray());
+        records.reset();
+        entries.reset();
+    }
+
+    private byte[] deflate(byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+        byte[] buf = new byte[4096];
+        while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+        return out.toByteArray();
+    }
+
+    private void roll() throws IOException {
+        close();
+        segmentNo++;
+        segment = FileChannel.open(segmentPath(dir, segmentNo), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexPath(dir, segmentNo), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writeFully(segment, header(SEGMENT_MAGIC));
+        writeFully(index, header(INDEX_MAGIC));
+    }
+
+    private void open(int n) throws IOException {
+        segmentNo = n;
+        segment = FileChannel.open(segmentPath(dir, n), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexPath(dir, n), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Segments of another format version stay as they are; new records start a fresh one
+        if (readVersion(segment, segmentPath(dir, n), SEGMENT_MAGIC) != VERSION
+                || index.size() > 0 && readVersion(index, indexPath(dir, n), INDEX_MAGIC) != VERSION) {
+            roll();
+            return;
+        }
+        if (index.size() == 0) writeFully(index, header(INDEX_MAGIC));
+        segment.position(segment.size());
+        index.position(index.size());
+    }
+
+    private static byte[] header(int magic) {
+        return ByteBuffer.allocate(HEADER_BYTES).putInt(magic).putInt(VERSION).array();
+    }
+
+    static int readVersion(FileChannel ch, Path p, int magic) throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+        if (ch.read(h, 0) < HEADER_BYTES || h.getInt(0) != magic)
+            throw new IOException(p + " is not an archive file");
+        return h.getInt(4);
+    }
+
+    private static void writeFully(FileChannel ch, byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment != null) segment.close();
+        if (index != null) index.close();
+    }
+}
@@ -0,0 +1,269 @@
+package service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background writer behind {@link AuditLog}. Callers enqueue into a bounded ring
+ * buffer (blocking when it is full); a single thread keeps the file open, writes
+ * whatever has accumulated and commits once per batch. The active file is sealed
+ * into the segment directory, and indexed, when an entry of a new day arrives or
+ * it outgrows its size limit; a file left over from an earlier day is sealed on open.
+ * If the thread dies (an I/O error, or after close) the appender is done: what
+ * is still queued is dropped, every waiter is released, and later appends are
+ * refused. After an I/O error {@link AuditLog} waits before trying a new one.
+ */
+class AuditAppender implements Runnable {
+
+    static final class Entry {
+        final LocalDateTime at; final String staffId; final String action;
+        final CountDownLatch marker; final boolean stop;
+        final List<Entry> group; // written together, in order, within one commit
+        Entry(LocalDateTime at, String staffId, String action) {
+            this.at = at; this.staffId = staffId; this.action = action; this.marker = null; this.stop = false; this.group = null;
+        }
+        Entry(List<Entry> group) {
+            this.at = group.get(0).at; this.staffId = null; this.action = null; this.marker = null; this.stop = false;
+            this.group = List.copyOf(group);
+        }
+        private Entry(CountDownLatch marker, boolean stop) {
+            this.at = null; this.staffId = null; this.action = null; this.marker = marker; this.stop = stop; this.group = null;
+        }
+    }
+
+    private static final DateTimeFormatter SEGMENT_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path file;
+    private final Path segmentDir;
+    private final long maxBytes;
+    private final AuditLog.Durability durability;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Entry> queue;
+    private final Thread thread;
+    private volatile boolean done;
+
+    private FileOutputStream out;
+    private Writer writer;
+    private LocalDate activeDay;
+    private LocalDateTime activeSince;
+    private long activeBytes;
+
+    AuditAppender(Path file, Path segmentDir, long maxBytes, AuditLog.Durability durability,
+                  int capacity, int batchSize, long maxDelayMillis) {
+        this.file = file;
+        this.segmentDir = segmentDir;
+        this.maxBytes = maxBytes;
+        this.durability = durability;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this, "audit-appender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Queues the entry; false if this appender has stopped and the entry was not taken. */
+    boolean append(Entry e) {
+        try {
+            while (!done) {
+                if (!queue.offer(e, 100, TimeUnit.MILLISECONDS)) continue;
+                // Taken after the thread's last drain: nobody else will release it
+                if (done) abandon();
+                return true;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /** Blocks until every entry enqueued before this call has been committed. */
+    void flush() {
+        CountDownLatch committed = new CountDownLatch(1);
+        if (append(new Entry(committed, false))) await(committed);
+    }
+
+    /** Drains the queue, commits and closes the file. */
+    void close() {
+        CountDownLatch closed = new CountDownLatch(1);
+        if (append(new Entry(closed, true))) await(closed);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        List<CountDownLatch> waiting = new ArrayList<>();
+        int pending = 0;
+        long deadline = 0;
+        boolean stop = false, committed = false;
+        IOException failure = null;
+        try {
+            open();
+            while (!stop) {
+                Entry first = pending == 0
+                        ? queue.take()
+                        : queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                boolean commitNow = false;
+                for (Entry e : batch) {
+                    if (e.marker != null) {
+                        waiting.add(e.marker);
+                        commitNow = true;
+                        stop |= e.stop;
+                        continue;
+                    }
+                    if (pending++ == 0) deadline = System.nanoTime() + maxDelayNanos;
+                    write(e);
+                }
+                batch.clear();
+                if (stop) {
+                    queue.drainTo(batch);
+                    for (Entry e : batch) if (e.marker == null) write(e); else waiting.add(e.marker);
+                    batch.clear();
+                }
+                if (commitNow || pending >= batchSize || (pending > 0 && System.nanoTime() >= deadline)) {
+                    commit();
+                    if (!committed) { committed = true; AuditLog.committed(this); }
+                    pending = 0;
+                    waiting.forEach(CountDownLatch::countDown);
+                    waiting.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            try {
+                if (writer != null) { commit(); writer.close(); }
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+            // Detached first so new entries go to a fresh appender, once one may be tried, rather than being refused here
+            boolean report = failure != null && AuditLog.detach(this);
+            done = true;
+            for (Entry e : batch) if (e.marker != null) waiting.add(e.marker);
+            waiting.forEach(CountDownLatch::countDown);
+            int lost = abandon();
+            if (report) System.err.println("Audit log writer failed, " + lost + " queued entries not written"
+                    + " and new ones dropped until it can write again: " + failure);
+        }
+    }
+
+    // Drops whatever is still queued, releasing its waiters; returns how many entries were dropped
+    private int abandon() {
+        List<Entry> left = new ArrayList<>();
+        queue.drainTo(left);
+        int lost = 0;
+        for (Entry e : left) {
+            if (e.marker != null) e.marker.countDown();
+            else lost += e.group == null ? 1 : e.group.size();
+        }
+        return lost;
+    }
+
+    private void open() throws IOException {
+        activeSince = firstEntryTime();
+        activeDay = activeSince == null ? null : activeSince.toLocalDate();
+        if (activeDay != null && activeDay.isBefore(LocalDate.now())) {
+            seal();
+            activeSince = null;
+            activeDay = null;
+        }
+        activeBytes = Files.exists(file) ? Files.size(file) : 0;
+        out = new FileOutputStream(file.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private LocalDateTime firstEntryTime() throws IOException {
+        if (!Files.exists(file)) return null;
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = r.readLine();
+            if (line == null || line.indexOf(',') < 0) return null;
+            return LocalDateTime.parse(line.substring(0, line.indexOf(',')));
+        } catch (RuntimeException malformed) {
+            return LocalDateTime.now(); // unreadable start: treat it as today's file
+        }
+    }
+
+    private void write(Entry e) throws IOException {
+        // A group is checked once up front so it never straddles two files
+        if (activeDay != null && (!e.at.toLocalDate().equals(activeDay) || activeBytes >= maxBytes)) rotate();
+        if (e.group == null) writeLine(e);
+        else for (Entry g : e.group) writeLine(g);
+    }
+
+    private void writeLine(Entry e) throws IOException {
+        if (activeDay == null) { activeDay = e.at.toLocalDate(); activeSince = e.at; }
+        String line = e.at.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + ',' + e.staffId + ',' + e.action + System.lineSeparator();
+        writer.write(line);
+        activeBytes += utf8Length(line);
+    }
+
+    // Bytes the line takes in the file, which is what maxBytes limits; counted without encoding it twice
+    private static int utf8Length(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n++;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) { n += 4; i++; }
+            else if (Character.isSurrogate(c)) n++; // unpaired: the encoder writes '?'
+            else n += 3;
+        }
+        return n;
+    }
+
+    // Commits and seals the active file, then starts a new one
+    private void rotate() throws IOException {
+        commit();
+        writer.close();
+        seal();
+        activeDay = null;
+        activeSince = null;
+        activeBytes = 0;
+        out = new FileOutputStream(file.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private void seal() throws IOException {
+        if (!Files.exists(file) || Files.size(file) == 0) return;
+        Files.createDirectories(segmentDir);
+        String base = "audit-" + (activeSince != null ? activeSince : LocalDateTime.now()).format(SEGMENT_NAME);
+        Path target = segmentDir.resolve(base + ".log");
+        for (int n = 1; Files.exists(target); n++) target = segmentDir.resolve(base + "-" + n + ".log");
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            AuditIndex.build(target).write(AuditIndex.indexPath(target));
+        } catch (IOException e) {
+            System.err.println("Audit index for " + target + " not written, it will be rebuilt when read: " + e);
+        }
+    }
+
+    private void commit() throws IOException {
+        writer.flush();
+        if (durability == AuditLog.Durability.FSYNC) out.getChannel().force(false);
+    }
+}
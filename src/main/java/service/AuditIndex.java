@@ -0,0 +1,167 @@
+package service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Sidecar index of one sealed audit segment: its time range, the line offsets
+ * for each staff id and each action kind (the action's first word, e.g.
+ * "discharge"), and every {@value #SPARSE_EVERY}th line's time so a time range
+ * can be entered without scanning from the start. Built once when the segment
+ * is sealed, or on first use if that did not happen.
+ */
+final class AuditIndex {
+    static final int MAGIC = 0x43484149; // "CHAI"
+    static final int VERSION = 1;
+    static final int SPARSE_EVERY = 256;
+
+    final long first, last; // epoch seconds of the first and last entry
+    final long[] sparseAt, sparseOffset;
+    final Map<String, long[]> byStaff, byKind;
+
+    private AuditIndex(long first, long last, long[] sparseAt, long[] sparseOffset,
+                       Map<String, long[]> byStaff, Map<String, long[]> byKind) {
+        this.first = first; this.last = last; this.sparseAt = sparseAt; this.sparseOffset = sparseOffset;
+        this.byStaff = byStaff; this.byKind = byKind;
+    }
+
+    static Path indexPath(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.lastIndexOf('.')) + ".idx");
+    }
+
+    /** The segment's index, read from its sidecar or, failing that, rebuilt and written. */
+    static AuditIndex forSegment(Path segment) throws IOException {
+        Path idx = indexPath(segment);
+        if (Files.exists(idx)) {
+            try {
+                return read(idx);
+            } catch (IOException stale) {
+                // rebuilt below
+            }
+        }
+        AuditIndex index = build(segment);
+        index.write(idx);
+        return index;
+    }
+
+    static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    static AuditIndex build(Path segment) throws IOException {
+        MappedByteBuffer buf = map(segment);
+        Map<String, List<Long>> staff = new HashMap<>(), kinds = new HashMap<>();
+        List<Long> sparseAt = new ArrayList<>(), sparseOffset = new ArrayList<>();
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        int lines = 0;
+        for (int pos = 0; pos < buf.limit(); ) {
+            int end = lineEnd(buf, pos);
+            AuditSearch.Entry e = parse(buf, pos, end);
+            if (e != null) {
+                long at = e.getAt().toEpochSecond(ZoneOffset.UTC);
+                first = Math.min(first, at);
+                last = Math.max(last, at);
+                if (lines++ % SPARSE_EVERY == 0) { sparseAt.add(at); sparseOffset.add((long) pos); }
+                staff.computeIfAbsent(e.getStaffId(), k -> new ArrayList<>()).add((long) pos);
+                kinds.computeIfAbsent(e.getKind(), k -> new ArrayList<>()).add((long) pos);
+            }
+            pos = end + 1;
+        }
+        return new AuditIndex(first, last, toArray(sparseAt), toArray(sparseOffset), postings(staff), postings(kinds));
+    }
+
+    private static Map<String, long[]> postings(Map<String, List<Long>> lists) {
+        Map<String, long[]> out = new HashMap<>();
+        lists.forEach((k, v) -> out.put(k, toArray(v)));
+        return out;
+    }
+
+    private static long[] toArray(List<Long> list) {
+        long[] a = new long[list.size()];
+        for (int i = 0; i < a.length; i++) a[i] = list.get(i);
+        return a;
+    }
+
+    /** Offset of the newline ending the line at {@code pos}, or the buffer's limit. */
+    static int lineEnd(ByteBuffer buf, int pos) {
+        while (pos < buf.limit() && buf.get(pos) != '\n') pos++;
+        return pos;
+    }
+
+    /** Parses the line in {@code [start, end)}; null for a blank or malformed line. */
+    static AuditSearch.Entry parse(ByteBuffer buf, int start, int end) {
+        if (end > start && buf.get(end - 1) == '\r') end--;
+        if (end <= start) return null;
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        String[] f = new String(bytes, StandardCharsets.UTF_8).split(",", 3);
+        if (f.length < 3) return null;
+        try {
+            return new AuditSearch.Entry(LocalDateTime.parse(f[0]), f[1], f[2]);
+        } catch (RuntimeException malformed) {
+            return null;
+        }
+    }
+
+    void write(Path idx) throws IOException {
+        Path tmp = idx.resolveSibling(idx.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(first);
+            out.writeLong(last);
+            writeLongs(out, sparseAt);
+            writeLongs(out, sparseOffset);
+            writePostings(out, byStaff);
+            writePostings(out, byKind);
+        }
+        Files.move(tmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static AuditIndex read(Path idx) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(idx)))) {
+            if (in.readInt() != MAGIC) throw new IOException(idx + " is not an audit index");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException(idx + " has unsupported version " + version);
+            long first = in.readLong(), last = in.readLong();
+            long[] sparseAt = readLongs(in), sparseOffset = readLongs(in);
+            return new AuditIndex(first, last, sparseAt, sparseOffset, readPostings(in), readPostings(in));
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] a) throws IOException {
+        out.writeInt(a.length);
+        for (long v : a) out.writeLong(v);
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] a = new long[in.readInt()];
+        for (int i = 0; i < a.length; i++) a[i] = in.readLong();
+        return a;
+    }
+
+    private static void writePostings(DataOutputStream out, Map<String, long[]> postings) throws IOException {
+        out.writeInt(postings.size());
+        for (Map.Entry<String, long[]> e : postings.entrySet()) {
+            out.writeUTF(e.getKey());
+            writeLongs(out, e.getValue());
+        }
+    }
+
+    private static Map<String, long[]> readPostings(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Map<String, long[]> m = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) m.put(in.readUTF(), readLongs(in));
+        return m;
+    }
+}
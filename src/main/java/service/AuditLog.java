@@ -1,18 +1,129 @@
 
 package service;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.file.*;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 public class AuditLog {
+    /** FLUSH hands each batch to the OS; FSYNC also forces it to disk before the batch is acknowledged. */
+    public enum Durability { FLUSH, FSYNC }
+
     private static final String LOG_FILE = "audit.log";
-    public static synchronized void log(String staffId, String action){
-        try (FileWriter fw = new FileWriter(LOG_FILE, true);
-             BufferedWriter bw = new BufferedWriter(fw);
-             PrintWriter out = new PrintWriter(bw)) {
-            out.println(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)
-                    + "," + staffId + "," + action);
-        } catch (IOException e) { e.printStackTrace(); }
+    // Sealed segments and their indexes; the active file rolls over daily or at this size
+    private static final String SEGMENT_DIR = "audit";
+    private static final long MAX_SEGMENT_BYTES = 16L << 20;
+    private static final int CAPACITY = 8192;
+
+    private static Durability durability = Durability.FLUSH;
+    private static int batchSize = 256;
+    private static long maxDelayMillis = 200;
+    private static volatile AuditAppender appender;
+    private static volatile Path directory = Paths.get("");
+    // After a writer fails, entries are dropped until retryAt; each failure in a row doubles the wait
+    private static final long FIRST_RETRY_MILLIS = 1000, MAX_RETRY_MILLIS = 60_000;
+    private static int failures;
+    private static long retryAt;
+    private static long dropped;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AuditLog::shutdown, "audit-shutdown"));
+    }
+
+    public static void log(String staffId, String action){
+        submit(new AuditAppender.Entry(LocalDateTime.now(), staffId, action));
+    }
+
+    /** Logs several actions by one staff member as a single batch, stamped alike and written contiguously. */
+    public static void logAll(String staffId, List<String> actions){
+        if (actions.isEmpty()) return;
+        LocalDateTime now = LocalDateTime.now();
+        List<AuditAppender.Entry> group = new ArrayList<>(actions.size());
+        for (String a : actions) group.add(new AuditAppender.Entry(now, staffId, a));
+        submit(new AuditAppender.Entry(group));
+    }
+
+    // An appender that has just died refuses the entry; its replacement, if it is time for one, gets one try
+    private static void submit(AuditAppender.Entry e){
+        AuditAppender a = appender();
+        if (a != null && a.append(e)) return;
+        a = appender();
+        if (a != null && a.append(e)) return;
+        synchronized (AuditLog.class) { dropped += e.group == null ? 1 : e.group.size(); }
+    }
+
+    /** Takes effect for the next appender, i.e. immediately if none is running yet or after {@link #shutdown()}. */
+    public static synchronized void configure(Durability d, int batch, long maxDelayMs){
+        durability = d; batchSize = batch; maxDelayMillis = maxDelayMs;
+    }
+
+    /** Keeps the active file and the segments under {@code dir}; takes effect like {@link #configure(Durability, int, long)}. */
+    public static synchronized void configure(Path dir){
+        directory = dir;
+        failures = 0; // a new place gets a fresh try
+        dropped = 0;
+    }
+
+    /** Waits until everything logged so far is committed to the file; seals a stale active file first. */
+    public static void flush(){
+        AuditAppender a = appender();
+        if (a != null) a.flush();
+    }
+
+    static Path activeFile(){
+        return directory.resolve(LOG_FILE);
+    }
+
+    /** Sealed segments, oldest first. */
+    static List<Path> segments() throws IOException {
+        List<Path> out = new ArrayList<>();
+        Path dir = directory.resolve(SEGMENT_DIR);
+        if (!Files.isDirectory(dir)) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "audit-*.log")) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort(null);
+        return out;
+    }
+
+    /** Drains pending entries and closes the file; the next {@link #log} starts a fresh appender. */
+    public static void shutdown(){
+        AuditAppender a;
+        synchronized (AuditLog.class) { a = appender; appender = null; }
+        if (a != null) a.close();
+    }
+
+    /**
+     * Called as a failed appender's thread ends. Entries are dropped until the next
+     * retry, so a lasting error (disk full, no permission) costs one thread and one
+     * report, not one per entry. True for the first failure in a row, which is the one to report.
+     */
+    static synchronized boolean detach(AuditAppender a){
+        if (appender == a) appender = null;
+        failures++;
+        retryAt = System.currentTimeMillis() + Math.min(MAX_RETRY_MILLIS, FIRST_RETRY_MILLIS << Math.min(failures - 1, 6));
+        return failures == 1;
+    }
+
+    /** Called by an appender after its first commit; ends a run of failures. */
+    static synchronized void committed(AuditAppender a){
+        if (failures == 0) return;
+        System.err.println("Audit log writing again; " + dropped + " entries were dropped while it was failing");
+        failures = 0;
+        dropped = 0;
+    }
+
+    // Null while failed and waiting to retry
+    private static AuditAppender appender(){
+        AuditAppender a = appender;
+        if (a != null) return a;
+        synchronized (AuditLog.class) {
+            if (appender == null && failures > 0 && System.currentTimeMillis() < retryAt) return null;
+            if (appender == null) appender = new AuditAppender(activeFile(), directory.resolve(SEGMENT_DIR), MAX_SEGMENT_BYTES,
+                    durability, CAPACITY, batchSize, maxDelayMillis);
+            return appender;
+        }
     }
 }
@@ -0,0 +1,109 @@
+package service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Queries over the audit trail. Sealed segments are skipped by their indexed
+ * time range; within a segment only the lines listed for the staff id or action
+ * kind are read, or, with neither given, the lines from the sparse time index
+ * onwards. Segments are read through memory maps. The active file is scanned,
+ * which rotation keeps small.
+ */
+public class AuditSearch {
+
+    /** One audit line. */
+    public static final class Entry {
+        private final LocalDateTime at; private final String staffId, action;
+        Entry(LocalDateTime at, String staffId, String action) { this.at = at; this.staffId = staffId; this.action = action; }
+        public LocalDateTime getAt() { return at; }
+        public String getStaffId() { return staffId; }
+        public String getAction() { return action; }
+        /** The action's first word, e.g. "discharge" or "allocate". */
+        public String getKind() {
+            int sp = action.indexOf(' ');
+            return sp < 0 ? action : action.substring(0, sp);
+        }
+        @Override public String toString() { return at + " " + staffId + " " + action; }
+    }
+
+    // Lines are stamped before they are queued, so the file is only nearly in time order
+    private static final Duration SKEW = Duration.ofMinutes(1);
+    // Sealed segments never change, so their indexes are kept once read
+    private static final Map<Path, AuditIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /**
+     * Entries in {@code [from, to)} in time order, optionally restricted to one
+     * staff id and/or one action kind (null means any).
+     */
+    public static List<Entry> search(String staffId, String kind, LocalDateTime from, LocalDateTime to) throws IOException {
+        AuditLog.flush();
+        long lo = from.toEpochSecond(ZoneOffset.UTC), hi = to.toEpochSecond(ZoneOffset.UTC);
+        List<Entry> out = new ArrayList<>();
+        for (Path segment : AuditLog.segments()) {
+            AuditIndex idx = INDEXES.get(segment);
+            if (idx == null) {
+                idx = AuditIndex.forSegment(segment);
+                INDEXES.put(segment, idx);
+            }
+            if (idx.last < lo || idx.first > hi) continue;
+            MappedByteBuffer buf = AuditIndex.map(segment);
+            long[] offsets = candidates(idx, staffId, kind);
+            if (offsets != null) {
+                for (long off : offsets) {
+                    Entry e = AuditIndex.parse(buf, (int) off, AuditIndex.lineEnd(buf, (int) off));
+                    if (matches(e, staffId, kind, from, to)) out.add(e);
+                }
+            } else {
+                scan(buf, startOffset(idx, lo), staffId, kind, from, to, out);
+            }
+        }
+        Path active = AuditLog.activeFile();
+        if (Files.exists(active) && Files.size(active) > 0)
+            scan(AuditIndex.map(active), 0, staffId, kind, from, to, out);
+        out.sort(Comparator.comparing(Entry::getAt));
+        return out;
+    }
+
+    // The shorter posting list of the filters given, or null if neither is
+    private static long[] candidates(AuditIndex idx, String staffId, String kind) {
+        long[] byStaff = staffId == null ? null : idx.byStaff.getOrDefault(staffId, new long[0]);
+        long[] byKind = kind == null ? null : idx.byKind.getOrDefault(kind, new long[0]);
+        if (byStaff == null) return byKind;
+        if (byKind == null) return byStaff;
+        return byStaff.length <= byKind.length ? byStaff : byKind;
+    }
+
+    // Offset of the last sampled line comfortably before lo
+    private static int startOffset(AuditIndex idx, long lo) {
+        long key = lo - SKEW.getSeconds();
+        int i = Arrays.binarySearch(idx.sparseAt, key);
+        if (i < 0) i = -i - 2;
+        while (i > 0 && idx.sparseAt[i - 1] >= key) i--; // equal samples may repeat
+        return i < 0 ? 0 : (int) idx.sparseOffset[i];
+    }
+
+    private static void scan(MappedByteBuffer buf, int pos, String staffId, String kind,
+                             LocalDateTime from, LocalDateTime to, List<Entry> out) {
+        while (pos < buf.limit()) {
+            int end = AuditIndex.lineEnd(buf, pos);
+            Entry e = AuditIndex.parse(buf, pos, end);
+            pos = end + 1;
+            if (e == null) continue;
+            if (e.at.isAfter(to.plus(SKEW))) break;
+            if (matches(e, staffId, kind, from, to)) out.add(e);
+        }
+    }
+
+    private static boolean matches(Entry e, String staffId, String kind, LocalDateTime from, LocalDateTime to) {
+        return e != null && !e.at.isBefore(from) && e.at.isBefore(to)
+                && (staffId == null || staffId.equals(e.staffId))
+                && (kind == null || kind.equals(e.getKind()));
+    }
+}
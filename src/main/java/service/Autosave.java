@@ -0,0 +1,138 @@
+package service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Saves the store on a background thread a short delay after it first becomes
+ * dirty, so a burst of mutations costs one write and the UI never waits on the
+ * disk. Listeners hear about every state change on the saving thread. Off
+ * until {@link #start}.
+ */
+public class Autosave {
+    public enum State { SAVED, PENDING, SAVING, FAILED }
+
+    public static final class Status {
+        private final State state; private final LocalDateTime lastSaved; private final String error;
+        Status(State state, LocalDateTime lastSaved, String error) {
+            this.state = state; this.lastSaved = lastSaved; this.error = error;
+        }
+        public State getState() { return state; }
+        /** When the store was last written successfully, or null if not yet. */
+        public LocalDateTime getLastSaved() { return lastSaved; }
+        /** Why the last attempt failed; null unless FAILED. */
+        public String getError() { return error; }
+
+        @Override public String toString() {
+            String at = lastSaved == null ? "" : " (last saved " + lastSaved.format(DateTimeFormatter.ofPattern("HH:mm:ss")) + ")";
+            return switch (state) {
+                case SAVED -> lastSaved == null ? "All changes saved" : "Saved at " + lastSaved.format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+                case PENDING -> "Unsaved changes" + at;
+                case SAVING -> "Saving..." + at;
+                case FAILED -> "Save failed: " + error + at;
+            };
+        }
+    }
+
+    private final CareHomeService svc;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final List<Consumer<Status>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ScheduledExecutorService executor;
+    private volatile long delayMillis;
+    private volatile Status status = new Status(State.SAVED, null, null);
+
+    Autosave(CareHomeService svc) {
+        this.svc = svc;
+    }
+
+    /** Turns autosave on; changes are written {@code delay} after the first one since the last save. */
+    public synchronized void start(Duration delay) {
+        delayMillis = delay.toMillis();
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "autosave");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (svc.hasUnsavedChanges()) changed();
+    }
+
+    /** Saves anything outstanding, waiting for it, then stops the background thread. */
+    public void stop() {
+        ScheduledExecutorService ex;
+        synchronized (this) { ex = executor; executor = null; }
+        if (ex == null) return;
+        ex.shutdown();
+        try {
+            ex.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduled.set(false);
+        if (svc.hasUnsavedChanges()) saveOnce();
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void addListener(Consumer<Status> l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Consumer<Status> l) {
+        listeners.remove(l);
+    }
+
+    /** Saves on the background thread now; completes with the resulting status. */
+    public CompletableFuture<Status> saveNow() {
+        ScheduledExecutorService ex = executor;
+        if (ex == null) return CompletableFuture.completedFuture(saveOnce());
+        return CompletableFuture.supplyAsync(this::saveOnce, ex);
+    }
+
+    // Called by the service after every mutation, often with locks held: only schedules
+    void changed() {
+        ScheduledExecutorService ex = executor;
+        if (ex == null || !scheduled.compareAndSet(false, true)) return;
+        publish(new Status(State.PENDING, status.lastSaved, null));
+        try {
+            ex.schedule(this::scheduledSave, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException stopping) {
+            scheduled.set(false);
+        }
+    }
+
+    private void scheduledSave() {
+        // Cleared first, so a change made while saving schedules the next write
+        scheduled.set(false);
+        if (saveOnce().state == State.FAILED) changed();
+    }
+
+    private synchronized Status saveOnce() {
+        if (!svc.hasUnsavedChanges() && status.state != State.FAILED) {
+            publish(new Status(State.SAVED, status.lastSaved, null));
+            return status;
+        }
+        LocalDateTime last = status.lastSaved;
+        publish(new Status(State.SAVING, last, null));
+        try {
+            svc.save();
+            publish(new Status(State.SAVED, LocalDateTime.now(), null));
+        } catch (Exception e) {
+            publish(new Status(State.FAILED, last, e.getMessage() == null ? e.toString() : e.getMessage()));
+        }
+        return status;
+    }
+
+    private void publish(Status s) {
+        status = s;
+        for (Consumer<Status> l : listeners) l.accept(s);
+    }
+}
@@ -0,0 +1,46 @@
+package service;
+
+import model.*;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Beds by id, and the bed each placed resident occupies. The resident side is
+ * updated from the room listener, i.e. inside the same room lock as the
+ * assign or vacate that changed it.
+ */
+class BedIndex implements Room.Listener {
+    private final Map<String, Bed> byId = new ConcurrentHashMap<>();
+    private final Map<String, Bed> byResident = new ConcurrentHashMap<>();
+
+    BedIndex(Collection<Room> rooms) {
+        addRooms(rooms);
+    }
+
+    void addRooms(Collection<Room> rooms) {
+        for (Room room : rooms) {
+            for (Bed b : room.getBeds()) {
+                byId.put(b.getId(), b);
+                if (!b.isEmpty()) byResident.put(b.getResident().getId(), b);
+            }
+            room.addListener(this);
+        }
+    }
+
+    Bed bed(String bedId) {
+        return byId.get(bedId);
+    }
+
+    Bed bedOf(String residentId) {
+        return byResident.get(residentId);
+    }
+
+    @Override
+    public void bedChanged(Room room, Bed bed, Resident previous, Resident current) {
+        // Remove only if still mapped here: in a move the new bed is assigned before the old one is vacated
+        if (previous != null) byResident.remove(previous.getId(), bed);
+        if (current != null) byResident.put(current.getId(), bed);
+    }
+}
@@ -0,0 +1,184 @@
+package service;
+
+import exception.NotFoundException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The group's care homes, each an independent {@link CareHomeService} with its
+ * own store, locks and files: {@code carehome-<id>.ser} and so on, while the
+ * default facility keeps the original {@code carehome.*} names. All of them
+ * live in the working directory unless {@link #configure} says otherwise. Work for one
+ * home is routed to it by {@link #facility}; group-wide queries ask every home
+ * in parallel and merge the answers in facility order. Homes found on disk at
+ * startup are known but only opened (and loaded) when first used, so one home
+ * costs nothing until someone works with it.
+ */
+public class CareHomeGroup {
+    public static final String DEFAULT = "default";
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9_-]+");
+    private static final Pattern FILE = Pattern.compile("carehome-([A-Za-z0-9_-]+)\\.(ser|journal|db)");
+
+    private static volatile Path home = Paths.get("");
+    private static volatile boolean started;
+
+    private static class Holder {
+        static final CareHomeGroup INSTANCE = new CareHomeGroup();
+    }
+
+    /**
+     * Keeps every facility's store, the discharge archive and the audit log under
+     * {@code dir} instead of the working directory. Only before the group is first used.
+     */
+    public static synchronized void configure(Path dir) throws IOException {
+        if (started) throw new IllegalStateException("The care home group is already in use");
+        home = dir;
+        AuditLog.configure(dir);
+        ArchiveUtil.configure(dir);
+    }
+
+    /** Where the group's files live. */
+    static Path home() {
+        return home;
+    }
+
+    public static CareHomeGroup get() {
+        return Holder.INSTANCE;
+    }
+
+    // A known facility, opened by whoever needs it first
+    private static final class Shard {
+        final String id;
+        private CareHomeService svc;
+        Shard(String id) { this.id = id; }
+
+        synchronized CareHomeService open() {
+            if (svc == null) {
+                try {
+                    svc = new CareHomeService(id, StoreBackend.open(DEFAULT.equals(id) ? "carehome" : "carehome-" + id));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return svc;
+        }
+
+        synchronized void close() throws IOException {
+            if (svc != null) svc.close();
+            svc = null;
+        }
+    }
+
+    private final ConcurrentMap<String, Shard> shards = new ConcurrentHashMap<>();
+    private final ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+        Thread t = new Thread(r, "facility-query");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private CareHomeGroup() {
+        synchronized (CareHomeGroup.class) {
+            started = true;
+        }
+        shards.put(DEFAULT, new Shard(DEFAULT));
+        try {
+            IdUtil.persistTo(home.resolve("carehome.ids"));
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Cannot read the group's id ledger", e);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(home.toAbsolutePath(), "carehome-*")) {
+            for (Path f : files) {
+                Matcher m = FILE.matcher(f.getFileName().toString());
+                if (m.matches()) shards.putIfAbsent(m.group(1), new Shard(m.group(1)));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not look for other facilities: " + e.getMessage());
+        }
+    }
+
+    public CareHomeService defaultFacility() {
+        return shards.computeIfAbsent(DEFAULT, Shard::new).open();
+    }
+
+    /** The facility with this id, opening it if it has not been used yet. */
+    public CareHomeService facility(String id) throws NotFoundException {
+        Shard s = shards.get(id);
+        if (s == null) throw new NotFoundException("No facility " + id);
+        return s.open();
+    }
+
+    /** The facility with this id, starting a new one with the default wards and accounts if there is none. */
+    public CareHomeService openFacility(String id) {
+        if (!ID.matcher(id).matches())
+            throw new IllegalArgumentException("Facility ids are letters, digits, '-' and '_': " + id);
+        return shards.computeIfAbsent(id, Shard::new).open();
+    }
+
+    /** Releases the facility's files and forgets it; changes autosave has not written are dropped, saved ones stay on disk. */
+    public void closeFacility(String id) throws IOException {
+        Shard s = shards.remove(id);
+        if (s != null) s.close();
+    }
+
+    /** Closes every open facility; each one's autosave, if running, writes what is outstanding first. */
+    public void closeAll() throws IOException {
+        IOException failed = null;
+        for (Shard s : shards.values()) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                if (failed == null) failed = e; else failed.addSuppressed(e);
+            }
+        }
+        if (failed != null) throw failed;
+    }
+
+    public List<String> facilityIds() {
+        return new ArrayList<>(new TreeSet<>(shards.keySet()));
+    }
+
+    /** Vacant isolation rooms in the whole group. */
+    public int countVacantIsolationRooms() {
+        return vacantIsolationRoomsByFacility().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public Map<String, Integer> vacantIsolationRoomsByFacility() {
+        return fanOut(CareHomeService::countVacantIsolationRooms);
+    }
+
+    /** Every facility's roster compliance. */
+    public Map<String, ComplianceReport> complianceByFacility() {
+        return fanOut(CareHomeService::complianceReport);
+    }
+
+    public List<String> nonCompliantFacilities() {
+        List<String> out = new ArrayList<>();
+        complianceByFacility().forEach((id, report) -> { if (!report.isCompliant()) out.add(id); });
+        return out;
+    }
+
+    // Runs the query on every facility at once, opening those not yet in use, and collects the answers by id
+    private <T> Map<String, T> fanOut(Function<CareHomeService, T> query) {
+        Map<String, CompletableFuture<T>> pending = new TreeMap<>();
+        for (Shard s : shards.values())
+            pending.put(s.id, CompletableFuture.supplyAsync(() -> query.apply(s.open()), pool));
+        Map<String, T> out = new LinkedHashMap<>();
+        try {
+            pending.forEach((id, f) -> out.put(id, f.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+        return out;
+    }
+}
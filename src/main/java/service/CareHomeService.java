@@ -4,40 +4,115 @@ import exception.*;
 import model.*;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.*;
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/** One facility of the group: its own store, locks and persistence files. See {@link CareHomeGroup}. */
 public class CareHomeService {
-    private static final String DATA_FILE = "carehome.ser";
-    private static CareHomeService INSTANCE;
 
+    /** The default facility. */
     public static CareHomeService get() {
-        if (INSTANCE == null) INSTANCE = new CareHomeService();
-        return INSTANCE;
+        return CareHomeGroup.get().defaultFacility();
     }
 
-    private DataStore store = new DataStore();
+    /**
+     * Told about every bed change in the live store, on the thread that made it
+     * and while the bed's room is locked, so keep it short. layoutChanged means
+     * the wards themselves changed (load, clear, new ward) and any cached beds are stale.
+     */
+    public interface BedObserver {
+        void bedChanged(Bed bed);
+        void layoutChanged();
+    }
+
+    /*
+     * Concurrency: each thread has its own Session. Staff and residents live in
+     * concurrent maps. Bed changes happen under the monitor of the bed's Room
+     * (moves lock both rooms in ordinal order); anything touching one resident's
+     * records, placement or discharge holds that Resident's monitor. Each change
+     * and its record() share storeLock, taken before any monitor; save, load,
+     * clear and bulk admission take it exclusively, so a snapshot never holds
+     * half a mutation, and may then read residents under their monitors. Lock
+     * order is storeLock -> resident -> room -> vacancy index. Mutations are
+     * recorded to the backend while those locks are held, so the journal order
+     * matches the order in which they took effect. Facilities share none of
+     * this; only the id counters, audit log and metrics are process-wide.
+     */
+    private volatile DataStore store = new DataStore();
     private static final int[] ROOM_LAYOUT = new int[]{1, 2, 4, 4, 4, 4};
 
-    private CareHomeService() {
-        // Build two wards with the exact layout
+    private final String facilityId;
+    private StoreBackend backend;
+    // True once the in-memory store matches what the backend holds, so recorded mutations have a base
+    private volatile boolean anchored;
+    private long lastRecoveryMillis;
+    private final List<BedObserver> observers = new CopyOnWriteArrayList<>();
+    private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+    // Mutations made so far, and how many of them the backend has durably
+    private final AtomicLong changes = new AtomicLong();
+    private volatile long savedChanges;
+    private final Autosave autosave = new Autosave(this);
+    private final Room.Listener forwarder = (room, bed, previous, current) -> {
+        for (BedObserver o : observers) o.bedChanged(bed);
+    };
+
+    // Ids for this facility; only its own leases are journalled with its store
+    private String nextId(String prefix) {
+        return IdUtil.nextId(prefix, leases);
+    }
+
+    // A mutation like any other, so a snapshot either holds the lease or leaves it in the journal
+    private final BiConsumer<String, Long> leases = (prefix, mark) -> {
+        try (Held h = mutating()) {
+            store.idHighWater.merge(prefix, mark, Math::max);
+            record(Mutation.LEASE_IDS, prefix, String.valueOf(mark));
+        }
+    };
+
+    CareHomeService(String facilityId, StoreBackend backend) {
+        this.facilityId = facilityId;
+        this.backend = backend;
+
+        // Open what was saved last; only a first run starts from the default wards and accounts
+        try {
+            load();
+        } catch (Exception e) {
+            System.out.println("No previous data found or failed to load: " + e.getMessage());
+            DataStore defaults = defaultStore();
+            defaults.idHighWater.putAll(IdUtil.highWaterMarks());
+            store = defaults;
+        }
+    }
+
+    // Two wards with the exact layout and the default accounts, rostered for now
+    private DataStore defaultStore() {
+        DataStore ds = new DataStore();
         Ward w1 = new Ward("Ward 1", true);
         Ward w2 = new Ward("Ward 2", false);
         createBedsForWard(w1);
         createBedsForWard(w2);
-        store.wards.add(w1);
-        store.wards.add(w2);
-
-        // Create default manager, doctor, nurse if they don't exist
-        Manager mgr = getOrCreateDefaultManager();
-        Doctor doc = getOrCreateDefaultDoctor();
-        Nurse nur = getOrCreateDefaultNurse();
-
-        // ✅ Auto-assign a shift that covers current time so they're always rostered
-        autoAssignCurrentShift(mgr);
-        autoAssignCurrentShift(doc);
-        autoAssignCurrentShift(nur);
+        ds.wards.add(w1);
+        ds.wards.add(w2);
+        ds.buildIndexes(ROOM_LAYOUT);
+        observe(ds.vacancy.rooms());
+
+        Manager mgr = new Manager(nextId("STF"), "manager", "password");
+        Doctor  doc = new Doctor (nextId("STF"), "doctor",  "password");
+        Nurse   nur = new Nurse  (nextId("STF"), "nurse",   "password");
+        for (Staff s : List.of(mgr, doc, nur)) {
+            ds.addStaff(s);
+            // ✅ Auto-assign a shift that covers current time so they're always rostered
+            autoAssignCurrentShift(ds, s);
+        }
+        return ds;
     }
 
     private void createBedsForWard(Ward w) {
@@ -47,97 +122,238 @@ public class CareHomeService {
         }
     }
 
-    private Manager getOrCreateDefaultManager() {
-        return (Manager) store.staff.values().stream()
-                .filter(s -> s instanceof Manager && s.getUsername().equals("manager"))
-                .findFirst()
-                .orElseGet(() -> {
-                    Manager m = new Manager(IdUtil.nextId("STF"), "manager", "password");
-                    store.staff.put(m.getId(), m);
-                    return m;
-                });
+    private static void autoAssignCurrentShift(DataStore ds, Staff staff) {
+        // Anchor the shift on the day it starts so a window spanning midnight still covers now
+        LocalDateTime start = LocalDateTime.now().minusHours(1);
+        LocalTime end = start.toLocalTime().plusHours(2);
+        ds.assignShift(staff, new Shift(start.getDayOfWeek(), start.toLocalTime(), end));
     }
 
-    private Doctor getOrCreateDefaultDoctor() {
-        return (Doctor) store.staff.values().stream()
-                .filter(s -> s instanceof Doctor && s.getUsername().equals("doctor"))
-                .findFirst()
-                .orElseGet(() -> {
-                    Doctor d = new Doctor(IdUtil.nextId("STF"), "doctor", "password");
-                    store.staff.put(d.getId(), d);
-                    return d;
-                });
+    /**
+     * Makes every mutation so far durable. Normally this is a small commit of the
+     * recorded mutations; the whole store is written when the backend holds no
+     * base for them yet.
+     */
+    public void save() throws IOException {
+        Metrics.SAVE.run(() -> {
+            storeLock.writeLock().lock();
+            try {
+                long upTo = changes.get();
+                if (anchored) {
+                    backend.commit(store);
+                } else {
+                    backend.snapshot(store);
+                    anchored = true;
+                }
+                savedChanges = upTo;
+            } finally {
+                storeLock.writeLock().unlock();
+            }
+        });
     }
 
-    private Nurse getOrCreateDefaultNurse() {
-        return (Nurse) store.staff.values().stream()
-                .filter(s -> s instanceof Nurse && s.getUsername().equals("nurse"))
-                .findFirst()
-                .orElseGet(() -> {
-                    Nurse n = new Nurse(IdUtil.nextId("STF"), "nurse", "password");
-                    store.staff.put(n.getId(), n);
-                    return n;
-                });
+    public String getFacilityId() {
+        return facilityId;
     }
 
-    private void autoAssignCurrentShift(Staff staff) {
-        LocalDateTime now = LocalDateTime.now();
-        DayOfWeek day = now.getDayOfWeek();
-        LocalTime start = now.toLocalTime().minusHours(1);
-        LocalTime end = now.toLocalTime().plusHours(1);
-        staff.assignShift(new Shift(day, start, end));
+    public boolean hasUnsavedChanges() {
+        return changes.get() != savedChanges;
     }
 
-    public void save() throws IOException {
-        DataStore.save(store, DATA_FILE);
+    public Autosave autosave() {
+        return autosave;
     }
 
     public void load() throws Exception {
-        store = DataStore.load(DATA_FILE);
+        Metrics.LOAD.run(() -> {
+            storeLock.writeLock().lock();
+            try {
+                long t0 = System.nanoTime();
+                DataStore loaded = backend.load();
+                loaded.buildIndexes(ROOM_LAYOUT);
+                // Only stores from before id marks were persisted need their ids scanned, which reads every resident's records
+                IdUtil.recover(loaded.idHighWater, loaded.idHighWater.isEmpty() ? loaded.usedIds() : List.of());
+                observe(loaded.vacancy.rooms());
+                store = loaded;
+                anchored = true;
+                savedChanges = changes.get();
+                lastRecoveryMillis = (System.nanoTime() - t0) / 1_000_000;
+            } finally {
+                storeLock.writeLock().unlock();
+            }
+        });
+        for (BedObserver o : observers) o.layoutChanged();
+    }
+
+    public void addBedObserver(BedObserver o) {
+        observers.add(o);
+    }
+
+    public void removeBedObserver(BedObserver o) {
+        observers.remove(o);
+    }
+
+    private void observe(List<Room> rooms) {
+        for (Room r : rooms) r.addListener(forwarder);
+    }
+
+    /** Switches persistence; the next save() writes the current store in full to the new backend. */
+    public void setBackend(StoreBackend b) throws IOException {
+        storeLock.writeLock().lock();
+        try {
+            // Residents may still read their records through the old backend
+            store.loadAll();
+            backend.close();
+            backend = b;
+            anchored = false;
+            changes.incrementAndGet(); // the new backend holds nothing yet
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    // Stops autosave, which saves what is outstanding if it was running, and releases the files
+    void close() throws IOException {
+        autosave.stop();
+        storeLock.writeLock().lock();
+        try {
+            backend.close();
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    // The live store, for benchmarks that measure DataStore directly
+    DataStore currentStore() {
+        return store;
+    }
+
+    public long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    public int getLastReplayCount() {
+        return backend.lastReplayCount();
+    }
+
+    private void record(Mutation m, String... args) {
+        changes.incrementAndGet();
+        autosave.changed();
+        if (!anchored) return; // captured by the full write the next save() does
+        try {
+            backend.record(m, args);
+        } catch (IOException e) {
+            anchored = false; // the backend may hold a torn entry; the next save() rewrites it whole
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records a batch that must not be half-applied and saves it. The caller holds
+     * storeLock exclusively and has already made the batch's changes. If this
+     * throws, the batch has been taken back out of the backend, the caller undoes
+     * it in memory, and the next save() rewrites the backend from the store.
+     */
+    private void saveBatch(List<StoreBackend.Change> batch) throws IOException {
+        boolean recorded = false;
+        try {
+            if (anchored) {
+                backend.recordAll(batch);
+                recorded = true;
+            }
+            changes.incrementAndGet();
+            save();
+        } catch (IOException | RuntimeException e) {
+            if (recorded) {
+                try {
+                    backend.discardBatch();
+                } catch (IOException | RuntimeException d) {
+                    e.addSuppressed(d);
+                }
+            }
+            anchored = false;
+            changes.incrementAndGet();
+            autosave.changed();
+            throw e;
+        }
+    }
+
+    // Held from a mutation's change through its record(); see the note on concurrency
+    private Held mutating() {
+        storeLock.readLock().lock();
+        return storeLock.readLock()::unlock;
+    }
+
+    private interface Held extends AutoCloseable {
+        @Override void close();
     }
 
     public Staff login(String username, String password) throws AuthorizationException {
-        Optional<Staff> match = store.staff.values().stream()
-                .filter(s -> s.credentialsMatch(username, password))
-                .findFirst();
-        if (match.isEmpty()) throw new AuthorizationException("Invalid credentials");
-        Session.get().setCurrentUser(match.get());
-        AuditLog.log(match.get().getId(), "login");
-        return match.get();
+        return Metrics.LOGIN.call(() -> authenticate(username, password));
+    }
+
+    private Staff authenticate(String username, String password) throws AuthorizationException {
+        Staff match = store.staffByUsername.get(username);
+        if (match == null || !match.credentialsMatch(username, password))
+            throw new AuthorizationException("Invalid credentials");
+        Session.get().setCurrentUser(match);
+        AuditLog.log(match.getId(), "login");
+        return match;
+    }
+
+    // The session's user if they are staff of this facility; a login elsewhere in the group grants nothing here.
+    // Matched by id and username, since load and clear replace the Staff objects; the session moves to the current one.
+    private Staff member() {
+        Session session = Session.get();
+        Staff u = session.getCurrentUser();
+        if (u == null) return null;
+        Staff current = store.staff.get(u.getId());
+        if (current == null || !current.getUsername().equals(u.getUsername())) return null;
+        if (current != u) session.setCurrentUser(current);
+        return current;
     }
 
     private void ensureRole(Role role) throws AuthorizationException {
-        Staff u = Session.get().getCurrentUser();
+        Staff u = member();
         if (u == null || u.getRole() != role)
             throw new AuthorizationException("Only " + role + " may perform this action");
     }
 
     private void ensureRostered() throws NotRosteredException {
-        Staff u = Session.get().getCurrentUser();
+        Staff u = member();
         if (u == null || !u.isRostered(LocalDateTime.now()))
             throw new NotRosteredException("You are not rostered right now");
     }
 
-    public Manager createManager(String u, String p) throws AuthorizationException {
+    public Manager createManager(String u, String p) throws AuthorizationException, DuplicateUsernameException {
         ensureRole(Role.MANAGER);
-        Manager m = new Manager(IdUtil.nextId("STF"), u, p);
-        store.staff.put(m.getId(), m);
+        Manager m = new Manager(nextId("STF"), u, p);
+        try (Held h = mutating()) {
+            if (!store.addStaff(m)) throw new DuplicateUsernameException("Username " + u + " is already taken");
+            record(Mutation.CREATE_STAFF, m.getId(), Role.MANAGER.name(), u, p);
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "create manager " + u);
         return m;
     }
 
-    public Doctor createDoctor(String u, String p) throws AuthorizationException {
+    public Doctor createDoctor(String u, String p) throws AuthorizationException, DuplicateUsernameException {
         ensureRole(Role.MANAGER);
-        Doctor d = new Doctor(IdUtil.nextId("STF"), u, p);
-        store.staff.put(d.getId(), d);
+        Doctor d = new Doctor(nextId("STF"), u, p);
+        try (Held h = mutating()) {
+            if (!store.addStaff(d)) throw new DuplicateUsernameException("Username " + u + " is already taken");
+            record(Mutation.CREATE_STAFF, d.getId(), Role.DOCTOR.name(), u, p);
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "create doctor " + u);
         return d;
     }
 
-    public Nurse createNurse(String u, String p) throws AuthorizationException {
+    public Nurse createNurse(String u, String p) throws AuthorizationException, DuplicateUsernameException {
         ensureRole(Role.MANAGER);
-        Nurse n = new Nurse(IdUtil.nextId("STF"), u, p);
-        store.staff.put(n.getId(), n);
+        Nurse n = new Nurse(nextId("STF"), u, p);
+        try (Held h = mutating()) {
+            if (!store.addStaff(n)) throw new DuplicateUsernameException("Username " + u + " is already taken");
+            record(Mutation.CREATE_STAFF, n.getId(), Role.NURSE.name(), u, p);
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "create nurse " + u);
         return n;
     }
@@ -146,46 +362,63 @@ public class CareHomeService {
         ensureRole(Role.MANAGER);
         Staff s = store.staff.get(id);
         if (s == null) throw new NotFoundException("No staff " + id);
-        s.setPassword(pass);
+        try (Held h = mutating()) {
+            synchronized (s) {
+                s.setPassword(pass);
+                record(Mutation.UPDATE_PASSWORD, id, pass);
+            }
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "update password " + id);
     }
 
-    public void assignShift(String id, Shift shift) throws AuthorizationException {
+    public void assignShift(String id, Shift shift) throws AuthorizationException, NotFoundException {
         ensureRole(Role.MANAGER);
-        store.staff.get(id).assignShift(shift);
+        Staff s = store.staff.get(id);
+        if (s == null) throw new NotFoundException("No staff " + id);
+        try (Held h = mutating()) {
+            synchronized (s) {
+                store.assignShift(s, shift);
+                record(Mutation.ASSIGN_SHIFT, id, shift.getDay().name(), shift.getStart().toString(), shift.getEnd().toString());
+            }
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "assign shift " + id + " " + shift);
     }
 
-    public Resident addResident(String name, Gender gender, boolean iso) throws Exception {
+    /** Opens another ward with the standard room layout; its beds are numbered W<n>-B1 onwards. */
+    public Ward addWard(String name, boolean malePreferred) throws AuthorizationException {
         ensureRole(Role.MANAGER);
-        Resident r = new Resident(IdUtil.nextId("RES"), name, gender, iso);
-        store.residents.put(r.getId(), r);
-        AuditLog.log(Session.get().getCurrentUser().getId(), "add resident " + name);
-        return r;
-    }
-
-    // Helper methods for rooms
-    private List<List<Bed>> roomsFor(Ward w) {
-        List<List<Bed>> rooms = new ArrayList<>();
-        int idx = 0;
-        for (int size : ROOM_LAYOUT) {
-            List<Bed> room = new ArrayList<>();
-            for (int i = 0; i < size; i++) {
-                if (idx < w.getBeds().size()) room.add(w.getBeds().get(idx++));
+        DataStore ds = store;
+        Ward w;
+        try (Held h = mutating()) {
+            synchronized (ds) {
+                String prefix = "W" + (ds.wards.size() + 1);
+                int beds = Arrays.stream(ROOM_LAYOUT).sum();
+                w = ds.addWard(name, malePreferred, prefix, beds);
+                ds.vacancy.addWard(w, ROOM_LAYOUT);
+                ds.beds.addRooms(ds.vacancy.roomsFor(w));
+                observe(ds.vacancy.roomsFor(w));
+                record(Mutation.ADD_WARD, name, String.valueOf(malePreferred), prefix, String.valueOf(beds));
             }
-            rooms.add(room);
         }
-        return rooms;
-    }
-
-    private boolean roomHasVacancy(List<Bed> room) {
-        return room.stream().anyMatch(Bed::isEmpty);
+        for (BedObserver o : observers) o.layoutChanged();
+        AuditLog.log(Session.get().getCurrentUser().getId(), "add ward " + name);
+        return w;
     }
 
-    private boolean roomEmpty(List<Bed> room) {
-        return room.stream().allMatch(Bed::isEmpty);
+    public Resident addResident(String name, Gender gender, boolean iso) throws Exception {
+        ensureRole(Role.MANAGER);
+        Resident r = new Resident(nextId("RES"), name, gender, iso);
+        try (Held h = mutating()) {
+            synchronized (r) {
+                store.residents.put(r.getId(), r);
+                record(Mutation.ADD_RESIDENT, r.getId(), name, gender.name(), String.valueOf(iso));
+            }
+        }
+        AuditLog.log(Session.get().getCurrentUser().getId(), "add resident " + name);
+        return r;
     }
 
+    // Helper methods for rooms
     public boolean roomAllGender(List<Bed> room, Gender gender) {
         return room.stream().filter(b -> !b.isEmpty())
                 .allMatch(b -> b.getResident().getGender() == gender);
@@ -193,35 +426,31 @@ public class CareHomeService {
 
     public List<List<Bed>> findRoomsForGender(Gender gender) {
         List<List<Bed>> result = new ArrayList<>();
-        for (Ward w : store.wards) {
-            for (List<Bed> room : roomsFor(w)) {
-                if (roomHasVacancy(room) && roomAllGender(room, gender)) {
-                    result.add(room);
-                }
-            }
-        }
+        for (Room room : store.vacancy.vacantRoomsForGender(gender)) result.add(room.getBeds());
         return result;
     }
 
-    public Bed allocateToRoom(List<Bed> room, Resident r) {
-        for (Bed b : room) {
-            if (b.isEmpty()) {
-                b.assign(r);
-                AuditLog.log(Session.get().getCurrentUser().getId(), "allocate " + r.getName() + " to " + b.getId());
-                return b;
-            }
-        }
-        return null;
+    public List<Room> getRooms(Ward w) {
+        return store.vacancy.roomsFor(w);
     }
 
-    // ---------- NEW: precise finders to enforce 4 -> 2 -> 1 priority ----------
-    private Bed findBedSameGenderOrEmpty(Resident r, int... sizes) {
-        for (int size : sizes) {
-            for (Ward w : store.wards) {
-                for (List<Bed> room : roomsFor(w)) {
-                    if (room.size() != size || !roomHasVacancy(room)) continue;
-                    if (roomEmpty(room) || roomAllGender(room, r.getGender())) {
-                        for (Bed b : room) if (b.isEmpty()) return b;
+    /** The bed a resident currently occupies, if any. */
+    public Optional<Bed> locateResident(String residentId) {
+        return Optional.ofNullable(store.beds.bedOf(residentId));
+    }
+
+    public Bed allocateToRoom(List<Bed> room, Resident r) {
+        if (room.isEmpty()) return null;
+        try (Held h = mutating()) {
+            synchronized (r) {
+                synchronized (room.get(0).getRoom()) {
+                    for (Bed b : room) {
+                        if (b.isEmpty()) {
+                            b.assign(r);
+                            record(Mutation.ALLOCATE, r.getId(), b.getId());
+                            AuditLog.log(Session.get().getCurrentUser().getId(), "allocate " + r.getName() + " to " + b.getId());
+                            return b;
+                        }
                     }
                 }
             }
@@ -229,18 +458,25 @@ public class CareHomeService {
         return null;
     }
 
-    private Bed findBedIgnoreGender(int... sizes) {
-        for (int size : sizes) {
-            for (Ward w : store.wards) {
-                for (List<Bed> room : roomsFor(w)) {
-                    if (room.size() != size || !roomHasVacancy(room)) continue;
-                    for (Bed b : room) if (b.isEmpty()) return b;
+    /**
+     * Takes the bed {@code find} proposes if, once its room is locked, the bed is
+     * still vacant and the room still {@code fits}; otherwise asks again. The
+     * caller holds storeLock shared and the resident's monitor. Returns null when
+     * nothing is proposed.
+     */
+    private Bed claimBed(Resident r, Supplier<Bed> find, Predicate<Room> fits) {
+        while (true) {
+            Bed b = find.get();
+            if (b == null) return null;
+            synchronized (b.getRoom()) {
+                if (b.isEmpty() && fits.test(b.getRoom())) {
+                    b.assign(r);
+                    record(Mutation.ALLOCATE, r.getId(), b.getId());
+                    return b;
                 }
             }
         }
-        return null;
     }
-    // -------------------------------------------------------------------------
 
     /**
      * Manager flow with gender preference:
@@ -250,95 +486,262 @@ public class CareHomeService {
      * Isolation residents are handled by allocateResidentToBed (1 empty -> 2 empty).
      */
     public void allocateResidentToBedWithGender(Resident r, boolean confirmed) throws Exception {
+        Metrics.ALLOCATE_WITH_GENDER.run(() -> allocateWithGender(r, confirmed));
+    }
+
+    private void allocateWithGender(Resident r, boolean confirmed) throws Exception {
         ensureRole(Role.MANAGER);
 
         if (r.isIsolation()) {
             // Defer to isolation path in the generic allocator to avoid duplication
-            allocateResidentToBed(r.getId());
+            allocate(r.getId());
             return;
         }
 
-        Bed target = findBedSameGenderOrEmpty(r, 4, 2, 1);
-        if (target != null) {
-            target.assign(r);
-            AuditLog.log(Session.get().getCurrentUser().getId(), "allocate " + r.getName() + " to " + target.getId());
-            return;
-        }
+        DataStore ds = store;
+        Room.Occupancy same = Room.Occupancy.of(r.getGender());
+        try (Held h = mutating()) {
+            synchronized (r) {
+                Bed target = claimBed(r, () -> ds.vacancy.findSameGenderOrEmpty(r.getGender(), 4, 2, 1),
+                        room -> room.occupancy() == Room.Occupancy.EMPTY || room.occupancy() == same);
+                if (target != null) {
+                    AuditLog.log(Session.get().getCurrentUser().getId(), "allocate " + r.getName() + " to " + target.getId());
+                    return;
+                }
 
-        if (!confirmed) {
-            throw new BedOccupiedException("No same-gender (or empty) room available.");
-        }
+                if (!confirmed) {
+                    throw new BedOccupiedException("No same-gender (or empty) room available.");
+                }
 
-        target = findBedIgnoreGender(4, 2, 1);
-        if (target == null) throw new BedOccupiedException("No vacant bed available.");
-        target.assign(r);
-        AuditLog.log(Session.get().getCurrentUser().getId(), "allocate (mixed) " + r.getName() + " to " + target.getId());
+                target = claimBed(r, () -> ds.vacancy.findAny(4, 2, 1), room -> true);
+                if (target == null) throw new BedOccupiedException("No vacant bed available.");
+                AuditLog.log(Session.get().getCurrentUser().getId(), "allocate (mixed) " + r.getName() + " to " + target.getId());
+            }
+        }
     }
 
     public void allocateResidentToBed(String residentId) throws Exception {
+        Metrics.ALLOCATE.run(() -> allocate(residentId));
+    }
+
+    private void allocate(String residentId) throws Exception {
         ensureRole(Role.MANAGER);
-        Resident r = store.residents.get(residentId);
+        DataStore ds = store;
+        Resident r = ds.residents.get(residentId);
         if (r == null) throw new NotFoundException("Resident not found");
 
-        java.util.function.Function<Integer, Bed> findByRoomSize = (Integer roomSize) -> {
-            for (Ward w : store.wards) {
-                for (List<Bed> room : roomsFor(w)) {
-                    if (room.size() == roomSize && roomHasVacancy(room)) {
-                        for (Bed b : room) if (b.isEmpty()) return b;
-                    }
+        try (Held h = mutating()) {
+            synchronized (r) {
+                if (!r.isIsolation()) {
+                    Bed target = claimBed(r, () -> ds.vacancy.findAny(4, 2, 1), room -> true);
+                    if (target == null) throw new BedOccupiedException("No vacant bed available.");
+                    AuditLog.log(Session.get().getCurrentUser().getId(), "allocate " + r.getName() + " to " + target.getId());
+                    return;
                 }
+
+                Bed b = claimBed(r, ds.vacancy::findIsolation, Room::isEmpty);
+                if (b == null)
+                    throw new BedOccupiedException("No suitable isolation bed available. You may need to move other residents.");
+                String kind = b.getRoom().size() == 1 ? "allocate (isolation) " : "allocate (isolation fallback) ";
+                AuditLog.log(Session.get().getCurrentUser().getId(), kind + r.getName() + " to " + b.getId());
             }
-            return null;
-        };
-
-        if (!r.isIsolation()) {
-            Bed target = findByRoomSize.apply(4);
-            if (target == null) target = findByRoomSize.apply(2);
-            if (target == null) target = findByRoomSize.apply(1);
-            if (target == null) throw new BedOccupiedException("No vacant bed available.");
-            target.assign(r);
-            AuditLog.log(Session.get().getCurrentUser().getId(), "allocate " + r.getName() + " to " + target.getId());
-            return;
         }
+    }
 
-        for (Ward w : store.wards) {
-            for (List<Bed> room : roomsFor(w)) {
-                if (room.size() == 1 && roomEmpty(room)) {
-                    Bed b = room.get(0);
-                    b.assign(r);
-                    AuditLog.log(Session.get().getCurrentUser().getId(), "allocate (isolation) " + r.getName() + " to " + b.getId());
-                    return;
+    /**
+     * Admits a batch of residents and places all of them or none. Isolation
+     * residents are placed first so the others cannot use up the empty singles
+     * and doubles they need; the rest follow the single-admission rules (same
+     * gender or empty, 4 -> 2 -> 1 beds, any room only if {@code allowMixed}).
+     * Other mutations wait while the batch is placed; it is audited as one batch
+     * and made durable in one write, and if that write fails nobody is admitted.
+     */
+    public List<Resident> admitAll(List<Admission> batch, boolean allowMixed) throws Exception {
+        ensureRole(Role.MANAGER);
+        if (batch.isEmpty()) return List.of();
+        List<Resident> admitted = new ArrayList<>(batch.size());
+        for (Admission a : batch)
+            admitted.add(new Resident(nextId("RES"), a.getName(), a.getGender(), a.isIsolation()));
+        List<Resident> order = new ArrayList<>(admitted);
+        order.sort(Comparator.comparing(r -> !r.isIsolation()));
+
+        storeLock.writeLock().lock();
+        try {
+            DataStore ds = store;
+            Map<Resident, Bed> placed = new HashMap<>();
+            List<String> actions = new ArrayList<>(admitted.size());
+            try {
+                for (Resident r : order) {
+                    Bed b = placementFor(ds, r, allowMixed);
+                    if (b == null) {
+                        String need = r.isIsolation() ? "isolation" : allowMixed ? "vacant" : "same-gender (or empty)";
+                        throw new BedOccupiedException("No " + need + " bed for " + r.getName() + "; none of the "
+                                + batch.size() + " residents were admitted.");
+                    }
+                    synchronized (b.getRoom()) { b.assign(r); }
+                    placed.put(r, b);
+                }
+                List<StoreBackend.Change> staged = new ArrayList<>(admitted.size() * 2);
+                for (Resident r : admitted) {
+                    Bed b = placed.get(r);
+                    ds.residents.put(r.getId(), r);
+                    staged.add(new StoreBackend.Change(Mutation.ADD_RESIDENT, r.getId(), r.getName(), r.getGender().name(), String.valueOf(r.isIsolation())));
+                    staged.add(new StoreBackend.Change(Mutation.ALLOCATE, r.getId(), b.getId()));
+                    actions.add("admit " + r.getName() + " to " + b.getId());
                 }
+                saveBatch(staged);
+            } catch (BedOccupiedException | IOException | RuntimeException e) {
+                for (Bed taken : placed.values()) {
+                    synchronized (taken.getRoom()) { taken.vacate(); }
+                }
+                for (Resident r : admitted) ds.residents.remove(r.getId(), r);
+                throw e;
             }
+            AuditLog.logAll(Session.get().getCurrentUser().getId(), actions);
+        } finally {
+            storeLock.writeLock().unlock();
         }
-        for (Ward w : store.wards) {
-            for (List<Bed> room : roomsFor(w)) {
-                if (room.size() == 2 && roomEmpty(room)) {
-                    Bed b = room.get(0);
-                    b.assign(r);
-                    AuditLog.log(Session.get().getCurrentUser().getId(), "allocate (isolation fallback) " + r.getName() + " to " + b.getId());
-                    return;
+        return admitted;
+    }
+
+    /** Reads a {@code name,gender,isolation} CSV (see {@link Admission#readCsv}) and admits it with {@link #admitAll}. */
+    public List<Resident> admitFromCsv(Path file, boolean allowMixed) throws Exception {
+        ensureRole(Role.MANAGER);
+        return admitAll(Admission.readCsv(file), allowMixed);
+    }
+
+    // The bed the single-admission rules would pick now; the caller holds storeLock exclusively
+    private static Bed placementFor(DataStore ds, Resident r, boolean allowMixed) {
+        if (r.isIsolation()) return ds.vacancy.findIsolation();
+        Bed b = ds.vacancy.findSameGenderOrEmpty(r.getGender(), 4, 2, 1);
+        return b != null || !allowMixed ? b : ds.vacancy.findAny(4, 2, 1);
+    }
+
+    /**
+     * Looks for the fewest relocations that would free a single or double room
+     * for an unplaced isolation resident, spending at most {@code budget}.
+     * Nothing changes until the plan is handed to {@link #applyPlan}. Empty when
+     * no plan of up to six moves exists or none was found in time.
+     */
+    public Optional<MovePlan> planIsolation(String residentId, Duration budget) throws Exception {
+        ensureRole(Role.MANAGER);
+        DataStore ds = store;
+        Resident r = ds.residents.get(residentId);
+        if (r == null) throw new NotFoundException("Resident not found");
+        if (!r.isIsolation()) throw new IllegalArgumentException(r.getName() + " does not need isolation");
+        IsolationPlanner planner;
+        storeLock.writeLock().lock();
+        try {
+            if (ds.beds.bedOf(residentId) != null) throw new BedOccupiedException(r.getName() + " already has a bed");
+            planner = new IsolationPlanner(ds.vacancy.rooms());
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+        return planner.plan(residentId, budget);
+    }
+
+    /**
+     * Carries out a plan from {@link #planIsolation} as one transaction: every
+     * move is checked against the beds as they are now, and if any no longer
+     * works the moves already made are undone and nothing is recorded. The plan
+     * is likewise undone if it cannot be recorded and saved.
+     */
+    public void applyPlan(MovePlan plan) throws Exception {
+        ensureRole(Role.MANAGER);
+        DataStore ds = store;
+        Resident r = ds.residents.get(plan.getResidentId());
+        if (r == null) throw new NotFoundException("Resident not found");
+        storeLock.writeLock().lock();
+        try {
+            if (ds.beds.bedOf(r.getId()) != null) throw new BedOccupiedException(r.getName() + " already has a bed");
+            List<Bed[]> done = new ArrayList<>();
+            Bed target = null;
+            List<String> actions = new ArrayList<>();
+            try {
+                for (MovePlan.Move m : plan.getMoves()) {
+                    Bed from = ds.beds.bed(m.getFromBedId()), to = ds.beds.bed(m.getToBedId());
+                    Resident mover = from == null ? null : from.getResident();
+                    if (mover == null || !mover.getId().equals(m.getResidentId()) || mover.isIsolation()
+                            || to == null || !to.isEmpty() || !sharesOnlyWith(to.getRoom(), mover))
+                        throw new BedOccupiedException("The plan is out of date: cannot " + m);
+                    relocate(from, to);
+                    done.add(new Bed[]{from, to});
+                }
+                Bed free = ds.beds.bed(plan.getTargetBedId());
+                if (free == null || !free.getRoom().isIsolationEligible())
+                    throw new BedOccupiedException("The plan is out of date: " + plan.getTargetBedId() + " is not free for isolation");
+                synchronized (free.getRoom()) { free.assign(r); }
+                target = free;
+
+                List<StoreBackend.Change> staged = new ArrayList<>();
+                for (MovePlan.Move m : plan.getMoves()) {
+                    staged.add(new StoreBackend.Change(Mutation.MOVE, m.getFromBedId(), m.getToBedId()));
+                    actions.add("move " + ds.residents.get(m.getResidentId()).getName() + " " + m.getFromBedId() + "->" + m.getToBedId());
+                }
+                staged.add(new StoreBackend.Change(Mutation.ALLOCATE, r.getId(), plan.getTargetBedId()));
+                actions.add("allocate (isolation plan) " + r.getName() + " to " + plan.getTargetBedId());
+                saveBatch(staged);
+            } catch (BedOccupiedException | IOException | RuntimeException e) {
+                if (target != null) {
+                    synchronized (target.getRoom()) { target.vacate(); }
                 }
+                for (int i = done.size() - 1; i >= 0; i--) relocate(done.get(i)[1], done.get(i)[0]);
+                throw e;
+            }
+            AuditLog.logAll(Session.get().getCurrentUser().getId(), actions);
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    // True if everyone already in the room has the mover's gender and none needs isolation
+    private static boolean sharesOnlyWith(Room room, Resident mover) {
+        for (Bed b : room.getBeds()) {
+            Resident o = b.getResident();
+            if (o != null && (o.getGender() != mover.getGender() || o.isIsolation())) return false;
+        }
+        return true;
+    }
+
+    // Moves whoever is in {@code from} to {@code to}; the caller holds storeLock exclusively
+    private static void relocate(Bed from, Bed to) {
+        Room first = from.getRoom(), second = to.getRoom();
+        if (first.getOrdinal() > second.getOrdinal()) { first = to.getRoom(); second = from.getRoom(); }
+        synchronized (first) {
+            synchronized (second) {
+                to.assign(from.getResident());
+                from.vacate();
             }
         }
-        throw new BedOccupiedException("No suitable isolation bed available. You may need to move other residents.");
     }
 
     public void moveResident(String fromId, String toId) throws Exception {
+        Metrics.MOVE.run(() -> move(fromId, toId));
+    }
+
+    private void move(String fromId, String toId) throws Exception {
         ensureRole(Role.NURSE);
         ensureRostered();
-        Bed from = null, to = null;
-        for (Ward w : store.wards)
-            for (Bed b : w.getBeds()) {
-                if (b.getId().equals(fromId)) from = b;
-                if (b.getId().equals(toId)) to = b;
-            }
+        DataStore ds = store;
+        Bed from = ds.beds.bed(fromId), to = ds.beds.bed(toId);
         if (from == null || to == null) throw new NotFoundException("Bed id invalid");
-        if (to.getResident() != null) throw new BedOccupiedException("Destination occupied");
+        Room first = from.getRoom(), second = to.getRoom();
+        if (first.getOrdinal() > second.getOrdinal()) { first = to.getRoom(); second = from.getRoom(); }
         Resident r = from.getResident();
         if (r == null) throw new NotFoundException("No resident in source");
-        to.assign(r);
-        from.vacate();
+        try (Held h = mutating()) {
+            synchronized (r) {
+                synchronized (first) {
+                    synchronized (second) {
+                        if (from.getResident() != r) throw new NotFoundException("Resident left the source bed");
+                        if (to.getResident() != null) throw new BedOccupiedException("Destination occupied");
+                        to.assign(r);
+                        from.vacate();
+                        record(Mutation.MOVE, fromId, toId);
+                    }
+                }
+            }
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "move " + r.getName() + " " + fromId + "->" + toId);
     }
 
@@ -347,8 +750,13 @@ public class CareHomeService {
         ensureRostered();
         Resident r = store.residents.get(residentId);
         if (r == null) throw new NotFoundException("Resident not found");
-        Prescription p = new Prescription(IdUtil.nextId("RX"), Session.get().getCurrentUser().getId(), LocalDateTime.now());
-        r.addPrescription(p);
+        Prescription p = new Prescription(nextId("RX"), Session.get().getCurrentUser().getId(), LocalDateTime.now());
+        try (Held h = mutating()) {
+            synchronized (r) {
+                r.addPrescription(p);
+                record(Mutation.ADD_PRESCRIPTION, r.getId(), p.getId(), p.getDoctorId(), p.getCreatedAt().toString());
+            }
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "add prescription for " + r.getName());
         return p;
     }
@@ -356,56 +764,156 @@ public class CareHomeService {
     public void addMedicationOrder(String residentId, String prescId, String med, String dose, LocalTime time) throws Exception {
         ensureRole(Role.DOCTOR);
         Resident r = store.residents.get(residentId);
-        Prescription p = r.getPrescriptions().stream()
-                .filter(x -> x.getId().equals(prescId))
-                .findFirst()
-                .orElseThrow(() -> new NotFoundException("Prescription not found"));
-        p.addOrder(new MedicationOrder(med, dose, time));
+        if (r == null) throw new NotFoundException("Resident not found");
+        try (Held h = mutating()) {
+            synchronized (r) {
+                Prescription p = r.getPrescriptions().stream()
+                        .filter(x -> x.getId().equals(prescId))
+                        .findFirst()
+                        .orElseThrow(() -> new NotFoundException("Prescription not found"));
+                MedicationOrder order = new MedicationOrder(med, dose, time);
+                p.addOrder(order);
+                store.orderAdded(residentId, prescId, order, LocalDateTime.now());
+                record(Mutation.ADD_ORDER, residentId, prescId, med, dose, time.toString());
+            }
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "add medication " + med);
     }
 
     public void administer(String residentId, String med, String dose) throws Exception {
+        Metrics.ADMINISTER.run(() -> give(residentId, med, dose));
+    }
+
+    private void give(String residentId, String med, String dose) throws Exception {
         ensureRole(Role.NURSE);
         ensureRostered();
         Resident r = store.residents.get(residentId);
         if (r == null) throw new NotFoundException("Resident not found");
-        r.addAdministration(new AdministrationRecord(med, dose, LocalDateTime.now(), Session.get().getCurrentUser().getId()));
+        AdministrationRecord rec = new AdministrationRecord(med, dose, LocalDateTime.now(), Session.get().getCurrentUser().getId());
+        try (Held h = mutating()) {
+            synchronized (r) {
+                r.addAdministration(rec);
+                store.given(r.getId(), rec.getMedicineCode(), rec.getAt());
+                record(Mutation.ADMINISTER, r.getId(), med, dose, rec.getAt().toString(), rec.getNurseId());
+            }
+        }
         AuditLog.log(Session.get().getCurrentUser().getId(), "administer " + med + " to " + r.getName());
     }
 
     public void discharge(String residentId) throws Exception {
-        ensureRole(Role.MANAGER);
-        Resident r = store.residents.remove(residentId);
-        if (r == null) throw new NotFoundException("Resident not found");
-        for (Ward w : store.wards)
-            for (Bed b : w.getBeds())
-                if (b.getResident() != null && b.getResident().getId().equals(residentId)) b.vacate();
-        ArchiveUtil.archiveResident(r);
-        AuditLog.log(Session.get().getCurrentUser().getId(), "discharge " + r.getName());
+        Metrics.DISCHARGE.run(() -> {
+            ensureRole(Role.MANAGER);
+            Resident r = release(store, residentId);
+            if (r == null) throw new NotFoundException("Resident not found");
+            ArchiveUtil.archiveResident(r);
+            AuditLog.log(Session.get().getCurrentUser().getId(), "discharge " + r.getName());
+        });
     }
 
-    public void checkCompliance() throws ComplianceException {
-        Map<String, Map<DayOfWeek, Integer>> nurseHours = new HashMap<>();
-        for (var s : store.staff.values()) {
-            if (s.getRole() == Role.NURSE) {
-                Map<DayOfWeek, Integer> dayHours = nurseHours.computeIfAbsent(s.getId(), k -> new EnumMap<>(DayOfWeek.class));
-                for (Shift sh : s.getShifts()) {
-                    dayHours.merge(sh.getDay(), sh.hours(), Integer::sum);
-                }
-                for (DayOfWeek d : DayOfWeek.values()) {
-                    int h = dayHours.getOrDefault(d, 0);
-                    if (h > 8) throw new ComplianceException("Nurse " + s.getUsername() + " exceeds 8 hours on " + d);
+    /**
+     * Discharges several residents and archives them together in one sequential
+     * write. Every id must exist when called; one discharged concurrently in the
+     * meantime is left out of the result.
+     */
+    public List<Resident> dischargeAll(Collection<String> residentIds) throws Exception {
+        ensureRole(Role.MANAGER);
+        DataStore ds = store;
+        for (String id : residentIds)
+            if (!ds.residents.containsKey(id)) throw new NotFoundException("Resident " + id + " not found");
+        List<Resident> released = new ArrayList<>();
+        for (String id : residentIds) {
+            Resident r = release(ds, id);
+            if (r != null) released.add(r);
+        }
+        ArchiveUtil.archiveResidents(released);
+        for (Resident r : released)
+            AuditLog.log(Session.get().getCurrentUser().getId(), "discharge " + r.getName());
+        return released;
+    }
+
+    // Removes the resident and frees its bed; null if it is already gone
+    private Resident release(DataStore ds, String residentId) {
+        Resident r = ds.residents.get(residentId);
+        if (r == null) return null;
+        try (Held h = mutating()) {
+            synchronized (r) {
+                if (ds.residents.remove(residentId) == null) return null;
+                ds.residentLeft(residentId);
+                // Holding the resident's monitor, so no move can change its bed meanwhile
+                Bed b = ds.beds.bedOf(residentId);
+                if (b != null) {
+                    synchronized (b.getRoom()) {
+                        if (b.getResident() == r) b.vacate();
+                    }
                 }
+                record(Mutation.DISCHARGE, residentId);
             }
         }
-        boolean doctorOk = store.staff.values().stream().filter(st -> st.getRole() == Role.DOCTOR).anyMatch(st -> {
-            for (DayOfWeek d : DayOfWeek.values()) {
-                int hours = st.getShifts().stream().filter(sh -> sh.getDay() == d).mapToInt(Shift::hours).sum();
-                if (hours < 1) return false;
-            }
-            return true;
+        return r;
+    }
+
+    /** Catalogued medicines starting with {@code prefix}, to complete what staff type. */
+    public List<String> suggestMedicines(String prefix) {
+        return DrugCatalog.MEDICINES.complete(prefix, 10);
+    }
+
+    public List<String> suggestDoses(String prefix) {
+        return DrugCatalog.DOSES.complete(prefix, 10);
+    }
+
+    /** Doses due within the next {@code minutes}, earliest first; overdue ones are listed by overdueDoses(). */
+    public List<DueDose> dueWithin(int minutes) throws AuthorizationException {
+        ensureRole(Role.NURSE);
+        return schedule().dueWithin(Duration.ofMinutes(minutes), LocalDateTime.now());
+    }
+
+    /** Doses more than an hour past due and not yet given. */
+    public List<DueDose> overdueDoses() throws AuthorizationException {
+        ensureRole(Role.NURSE);
+        return schedule().overdue(LocalDateTime.now());
+    }
+
+    // Built on first use under the exclusive lock, so no mutation is half done while it reads the residents
+    private MedicationScheduler schedule() {
+        DataStore ds = store;
+        MedicationScheduler s = ds.schedule;
+        if (s != null) return s;
+        storeLock.writeLock().lock();
+        try {
+            return ds.buildSchedule(LocalDateTime.now());
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /** Audit entries in {@code [from, to)}, optionally for one staff id and/or action kind such as "discharge". */
+    public List<AuditSearch.Entry> auditTrail(String staffId, String kind, LocalDateTime from, LocalDateTime to)
+            throws AuthorizationException, IOException {
+        ensureRole(Role.MANAGER);
+        return AuditSearch.search(staffId, kind, from, to);
+    }
+
+    /** Discharged residents, for audits and readmissions. Close the reader when done. */
+    public ArchiveReader openArchive() throws AuthorizationException, IOException {
+        ensureRole(Role.MANAGER);
+        return ArchiveUtil.reader();
+    }
+
+    public void checkCompliance() throws ComplianceException {
+        Metrics.CHECK_COMPLIANCE.run(() -> {
+            ComplianceReport report = complianceReport();
+            if (!report.isCompliant()) throw new ComplianceException(report.toString());
         });
-        if (!doctorOk) throw new ComplianceException("No doctor assigned for 1 hour every day");
+    }
+
+    /** All current roster violations: nurses over 8 hours on a day, and days no doctor covers for an hour. */
+    public ComplianceReport complianceReport() {
+        return store.compliance.report();
+    }
+
+    /** Empty single and double rooms, i.e. how many isolation residents could be placed right now. */
+    public int countVacantIsolationRooms() {
+        return store.vacancy.isolationRooms();
     }
 
     public List<Ward> getWards() {
@@ -422,43 +930,26 @@ public class CareHomeService {
     
     // Wipe everything except default logins, rebuild wards, roster defaults now, and save.
     public void clearAllData() {
-        // Optional: if you want IDs to restart from 1 after clearing, uncomment:
-        // IdUtil.reset();
-
-        // Fresh datastore
-        DataStore newStore = new DataStore();
-
-        // Rebuild two wards with the fixed 19-bed layout
-        Ward w1 = new Ward("Ward 1", true);
-        Ward w2 = new Ward("Ward 2", false);
-        createBedsForWard(w1);
-        createBedsForWard(w2);
-        newStore.wards.add(w1);
-        newStore.wards.add(w2);
-
-        // Recreate default accounts
-        Manager mgr = new Manager(IdUtil.nextId("STF"), "manager", "password");
-        Doctor  doc = new Doctor (IdUtil.nextId("STF"), "doctor",  "password");
-        Nurse   nur = new Nurse  (IdUtil.nextId("STF"), "nurse",   "password");
-
-        newStore.staff.put(mgr.getId(), mgr);
-        newStore.staff.put(doc.getId(), doc);
-        newStore.staff.put(nur.getId(), nur);
-
-        // Swap in the fresh store
-        this.store = newStore;
-
-        // Make sure defaults are rostered right now
-        autoAssignCurrentShift(mgr);
-        autoAssignCurrentShift(doc);
-        autoAssignCurrentShift(nur);
-
-        // Persist cleared state
+        DataStore newStore = defaultStore();
+        storeLock.writeLock().lock();
         try {
-            save();
+            // Swap in the fresh store; whoever cleared it stays logged in as the default account of the same name
+            Staff me = member();
+            this.store = newStore;
+            if (me != null) Session.get().setCurrentUser(newStore.staffByUsername.get(me.getUsername()));
+
+            // Persist cleared state in full; id counters carry over so cleared ids are not reused
+            store.idHighWater.putAll(IdUtil.highWaterMarks());
+            long upTo = changes.incrementAndGet();
+            backend.snapshot(store);
+            anchored = true;
+            savedChanges = upTo;
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            storeLock.writeLock().unlock();
         }
+        for (BedObserver o : observers) o.layoutChanged();
     }
 
 }
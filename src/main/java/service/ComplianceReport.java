@@ -0,0 +1,51 @@
+package service;
+
+import java.time.DayOfWeek;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** Every roster rule broken at the time of the check, not just the first one. */
+public class ComplianceReport {
+
+    public enum Kind { NURSE_OVER_HOURS, NO_DOCTOR }
+
+    public static class Violation {
+        private final Kind kind; private final DayOfWeek day; private final String staffId; private final String username; private final int minutes;
+        Violation(Kind kind, DayOfWeek day, String staffId, String username, int minutes) {
+            this.kind = kind; this.day = day; this.staffId = staffId; this.username = username; this.minutes = minutes;
+        }
+        public Kind getKind() { return kind; }
+        public DayOfWeek getDay() { return day; }
+        public String getStaffId() { return staffId; }
+        public String getUsername() { return username; }
+        public int getMinutes() { return minutes; }
+
+        @Override
+        public String toString() {
+            return kind == Kind.NURSE_OVER_HOURS
+                    ? "Nurse " + username + " exceeds 8 hours on " + day + " (" + minutes / 60 + "h" + minutes % 60 + "m)"
+                    : "No doctor assigned for 1 hour on " + day;
+        }
+    }
+
+    private final List<Violation> violations;
+
+    ComplianceReport(List<Violation> violations) {
+        this.violations = Collections.unmodifiableList(violations);
+    }
+
+    public boolean isCompliant() {
+        return violations.isEmpty();
+    }
+
+    public List<Violation> getViolations() {
+        return violations;
+    }
+
+    @Override
+    public String toString() {
+        return isCompliant() ? "All staff rosters comply."
+                : violations.stream().map(Violation::toString).collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,63 @@
+package service;
+
+import model.*;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * Rostered minutes per staff member per day, updated as shifts are assigned.
+ * Tracks which nurses are over 8 hours and how many doctors cover each day,
+ * so a compliance check only reads off the current violations.
+ */
+class ComplianceTracker {
+    private static final int NURSE_MAX_MINUTES = 8 * 60;
+    private static final int DOCTOR_MIN_MINUTES = 60;
+
+    private final Map<String, int[]> minutes = new HashMap<>();
+    private final List<SortedMap<String, Staff>> nursesOver = new ArrayList<>();
+    private final int[] doctorsCovering = new int[7];
+
+    ComplianceTracker(Collection<Staff> staff) {
+        for (int d = 0; d < 7; d++) nursesOver.add(new TreeMap<>());
+        for (Staff s : staff)
+            for (Shift sh : s.getShifts()) shiftAssigned(s, sh);
+    }
+
+    synchronized void shiftAssigned(Staff s, Shift sh) {
+        if (s.getRole() == Role.MANAGER) return;
+        int[] perDay = minutes.computeIfAbsent(s.getId(), k -> new int[7]);
+        int day = sh.getDay().getValue() - 1;
+        int start = sh.getStart().toSecondOfDay() / 60, end = sh.getEnd().toSecondOfDay() / 60;
+        if (sh.crossesMidnight()) {
+            add(s, perDay, day, 24 * 60 - start);
+            add(s, perDay, (day + 1) % 7, end);
+        } else {
+            add(s, perDay, day, end - start);
+        }
+    }
+
+    private void add(Staff s, int[] perDay, int day, int delta) {
+        int before = perDay[day];
+        int after = before + delta;
+        perDay[day] = after;
+        if (s.getRole() == Role.NURSE && after > NURSE_MAX_MINUTES) {
+            nursesOver.get(day).put(s.getId(), s);
+        } else if (s.getRole() == Role.DOCTOR && before < DOCTOR_MIN_MINUTES && after >= DOCTOR_MIN_MINUTES) {
+            doctorsCovering[day]++;
+        }
+    }
+
+    synchronized ComplianceReport report() {
+        List<ComplianceReport.Violation> violations = new ArrayList<>();
+        for (DayOfWeek d : DayOfWeek.values()) {
+            int day = d.getValue() - 1;
+            for (Staff n : nursesOver.get(day).values())
+                violations.add(new ComplianceReport.Violation(ComplianceReport.Kind.NURSE_OVER_HOURS, d,
+                        n.getId(), n.getUsername(), minutes.get(n.getId())[day]));
+            if (doctorsCovering[day] == 0)
+                violations.add(new ComplianceReport.Violation(ComplianceReport.Kind.NO_DOCTOR, d, null, null, 0));
+        }
+        return new ComplianceReport(violations);
+    }
+}
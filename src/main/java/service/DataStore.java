@@ -3,21 +3,143 @@ package service;
 
 import model.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DataStore implements Serializable {
-    public Map<String, Staff> staff = new HashMap<>();
-    public Map<String, Resident> residents = new HashMap<>();
-    public List<Ward> wards = new ArrayList<>();
+    private static final long serialVersionUID = -8290553850540506019L;
+    public Map<String, Staff> staff = new ConcurrentHashMap<>();
+    public Map<String, Resident> residents = new ConcurrentHashMap<>();
+    public List<Ward> wards = new CopyOnWriteArrayList<>();
+    // Sequence number of the last journal entry this snapshot already contains
+    public long journalSeq;
+    // Highest id number leased per prefix, so a restart never hands an id out twice
+    public Map<String, Long> idHighWater = new ConcurrentHashMap<>();
 
-    public static void save(DataStore ds, String file) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(ds);
+    // Derived lookup structures; rebuilt after construction or load, never serialized
+    transient VacancyIndex vacancy;
+    transient BedIndex beds;
+    transient Map<String, Staff> staffByUsername;
+    transient ComplianceTracker compliance;
+    // Built on first use rather than on load, since it reads every resident's records
+    transient volatile MedicationScheduler schedule;
+    // Orders added before then, with when, so their first dose is the same as if it had been running
+    private transient Map<MedicationOrder, LocalDateTime> unscheduled;
+
+    void buildIndexes(int[] roomLayout) {
+        // Snapshots written before the maps were concurrent come back as HashMaps
+        if (!(staff instanceof ConcurrentHashMap)) staff = new ConcurrentHashMap<>(staff);
+        if (!(residents instanceof ConcurrentHashMap)) residents = new ConcurrentHashMap<>(residents);
+        if (!(wards instanceof CopyOnWriteArrayList)) wards = new CopyOnWriteArrayList<>(wards);
+        if (idHighWater == null) idHighWater = new ConcurrentHashMap<>();
+        vacancy = new VacancyIndex(wards, roomLayout);
+        beds = new BedIndex(vacancy.rooms());
+        staffByUsername = new ConcurrentHashMap<>();
+        for (Staff s : staff.values()) staffByUsername.putIfAbsent(s.getUsername(), s);
+        compliance = new ComplianceTracker(staff.values());
+        unscheduled = Collections.synchronizedMap(new IdentityHashMap<>());
+    }
+
+    /** The medication schedule, built now if nothing has needed it yet; the caller holds the store lock exclusively. */
+    MedicationScheduler buildSchedule(LocalDateTime now) {
+        if (schedule == null) {
+            schedule = new MedicationScheduler(residents.values(), unscheduled, now);
+            unscheduled.clear();
+        }
+        return schedule;
+    }
+
+    // The schedule hooks below are called while the store lock is held shared, so a build sees all or none of each
+
+    void orderAdded(String residentId, String prescriptionId, MedicationOrder order, LocalDateTime now) {
+        MedicationScheduler s = schedule;
+        if (s != null) s.orderAdded(residentId, prescriptionId, order, now);
+        else unscheduled.put(order, now);
+    }
+
+    void given(String residentId, int medicineCode, LocalDateTime at) {
+        MedicationScheduler s = schedule;
+        if (s != null) s.given(residentId, medicineCode, at); // otherwise the build finds it in the history
+    }
+
+    void residentLeft(String residentId) {
+        MedicationScheduler s = schedule;
+        if (s != null) s.residentLeft(residentId);
+    }
+
+    /** Every staff, resident and prescription id in the store. */
+    List<String> usedIds() {
+        List<String> ids = new ArrayList<>(staff.keySet());
+        for (Resident r : residents.values()) {
+            ids.add(r.getId());
+            for (Prescription p : r.getPrescriptions()) ids.add(p.getId());
+        }
+        return ids;
+    }
+
+    /** Reads every resident's lazily loaded records, so nothing is left to read from the file or database the store came from. */
+    void loadAll() {
+        for (Resident r : residents.values()) {
+            r.getPrescriptions();
+            r.getAdministrations();
         }
     }
+
+    /** Appends a ward whose beds are named {@code bedPrefix}-B1, -B2, ... */
+    synchronized Ward addWard(String name, boolean malePreferred, String bedPrefix, int bedCount) {
+        for (Ward w : wards)
+            if (w.getId().equals(name)) throw new IllegalArgumentException("Ward " + name + " already exists");
+        Ward w = new Ward(name, malePreferred);
+        for (int i = 1; i <= bedCount; i++) w.addBed(new Bed(bedPrefix + "-B" + i));
+        wards.add(w);
+        return w;
+    }
+
+    void assignShift(Staff s, Shift shift) {
+        s.assignShift(shift);
+        compliance.shiftAssigned(s, shift);
+    }
+
+    /** Adds a staff member unless the username is already taken. */
+    boolean addStaff(Staff s) {
+        if (staffByUsername.putIfAbsent(s.getUsername(), s) != null) return false;
+        staff.put(s.getId(), s);
+        return true;
+    }
+
+    // The drug catalog follows the store, so it covers every code the residents use
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(new DrugCatalog.Codes());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        ((DrugCatalog.Codes) in.readObject()).applyTo(residents.values());
+    }
+
+    /** Writes {@code ds} in the binary snapshot format. */
+    public static void save(DataStore ds, String file) throws IOException {
+        SnapshotCodec.write(ds, Paths.get(file));
+    }
+
+    /** Reads a binary snapshot, or a Java-serialized store written before that format existed. */
     public static DataStore load(String file) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+        Path path = Paths.get(file);
+        ByteBuffer head = ByteBuffer.allocate(4);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ch.read(head, 0);
+        }
+        if (head.position() == 4 && head.getInt(0) == SnapshotCodec.MAGIC) return SnapshotCodec.read(path);
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
             return (DataStore) ois.readObject();
+        } catch (InvalidClassException e) {
+            return LegacySnapshot.read(path); // the first release, written before classes had a serialVersionUID
         }
     }
 }
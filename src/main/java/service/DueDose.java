@@ -0,0 +1,17 @@
+package service;
+
+import java.time.LocalDateTime;
+
+/** One scheduled dose of a medication order, as reported by the MAR queries. */
+public class DueDose {
+    private final String residentId, prescriptionId, medicine, dose; private final LocalDateTime due;
+    DueDose(String residentId, String prescriptionId, String medicine, String dose, LocalDateTime due) {
+        this.residentId = residentId; this.prescriptionId = prescriptionId; this.medicine = medicine; this.dose = dose; this.due = due;
+    }
+    public String getResidentId() { return residentId; }
+    public String getPrescriptionId() { return prescriptionId; }
+    public String getMedicine() { return medicine; }
+    public String getDose() { return dose; }
+    public LocalDateTime getDue() { return due; }
+    @Override public String toString() { return residentId + " " + medicine + " " + dose + " due " + due.toLocalTime(); }
+}
@@ -0,0 +1,24 @@
+package service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class FileUtil {
+    private FileUtil() {
+    }
+
+    /**
+     * Forces a directory's entries to disk, so files created, renamed or deleted
+     * in it stay that way after a power loss. Windows cannot open a directory
+     * for this and commits renames with the file system itself, so there it
+     * does nothing.
+     */
+    static void forceDirectory(Path dir) throws IOException {
+        if (System.getProperty("os.name", "").startsWith("Windows")) return;
+        try (FileChannel ch = FileChannel.open(dir.toAbsolutePath(), StandardOpenOption.READ)) {
+            ch.force(true);
+        }
+    }
+}
@@ -1,21 +1,131 @@
 package service;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
+/**
+ * Hands out ids like STF12 or RES7. Each thread leases a block of numbers per
+ * prefix from a shared high-water mark and then counts through it privately, so
+ * the shared counter is touched once per block. Blocks are held per owner and
+ * each lease is reported only to the owner it was taken for (a facility
+ * journals its own leases with its store); on load the counters are recovered
+ * from the persisted marks and the ids already in use. Facilities open lazily,
+ * so a group also keeps every mark in one ledger file, written before a leased
+ * block is used; that way no facility can hand out an id another one already has.
+ * A multi-process deployment only has to make the block lease itself atomic
+ * across processes.
+ */
 public class IdUtil {
+    private static final int BLOCK = 32;
 
-    private static final Map<String, AtomicInteger> counters = new HashMap<>();
+    private static final Map<String, AtomicLong> highWater = new ConcurrentHashMap<>();
+    private static final BiConsumer<String, Long> NOBODY = (prefix, mark) -> {};
+    // Per thread, per owner, per prefix; an owner that is gone no longer keeps its blocks
+    private static final ThreadLocal<Map<BiConsumer<String, Long>, Map<String, long[]>>> leases =
+            ThreadLocal.withInitial(WeakHashMap::new);
+    // Bumped when counters are recovered or reset so threads drop blocks leased before
+    private static volatile int epoch;
+    private static final ThreadLocal<int[]> leaseEpoch = ThreadLocal.withInitial(() -> new int[]{epoch});
+    private static volatile Path ledger;
 
     public static String nextId(String prefix) {
-        counters.putIfAbsent(prefix, new AtomicInteger(0));
-        int next = counters.get(prefix).incrementAndGet();
-        return prefix + next;
+        return nextId(prefix, NOBODY);
+    }
+
+    /** An id from a block leased for {@code owner}, which is told the block's last number when it leases one. */
+    public static String nextId(String prefix, BiConsumer<String, Long> owner) {
+        Map<BiConsumer<String, Long>, Map<String, long[]>> all = leases.get();
+        int[] seen = leaseEpoch.get();
+        if (seen[0] != epoch) {
+            all.clear();
+            seen[0] = epoch;
+        }
+        Map<String, long[]> mine = all.computeIfAbsent(owner, k -> new HashMap<>());
+        long[] block = mine.get(prefix); // {next, last}
+        if (block == null || block[0] > block[1]) {
+            long last = highWater.computeIfAbsent(prefix, k -> new AtomicLong()).addAndGet(BLOCK);
+            if (ledger != null) writeLedger();
+            block = new long[]{last - BLOCK + 1, last};
+            mine.put(prefix, block);
+            owner.accept(prefix, last);
+        }
+        return prefix + block[0]++;
+    }
+
+    /** Moves the counters past the marks in {@code file}, if any, and from now on records every lease there. */
+    public static synchronized void persistTo(Path file) throws IOException {
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space > 0) raise(line.substring(0, space), Long.parseLong(line.substring(space + 1)));
+            }
+        }
+        ledger = file;
+        epoch++;
+    }
+
+    // Every mark as it is now, so writes that race each other can only move the file forwards
+    private static synchronized void writeLedger() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(highWaterMarks()).forEach((prefix, mark) -> sb.append(prefix).append(' ').append(mark).append('\n'));
+        Path tmp = ledger.resolveSibling(ledger.getFileName() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true);
+            }
+            Files.move(tmp, ledger, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileUtil.forceDirectory(ledger.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot record id lease in " + ledger, e);
+        }
+    }
+
+    /** Current high-water mark per prefix, i.e. the last number any thread may hand out. */
+    public static Map<String, Long> highWaterMarks() {
+        Map<String, Long> marks = new HashMap<>();
+        highWater.forEach((prefix, mark) -> marks.put(prefix, mark.get()));
+        return marks;
+    }
+
+    /** Moves every counter past both the persisted marks and the numbers of ids already in use. */
+    public static void recover(Map<String, Long> persisted, Collection<String> usedIds) {
+        persisted.forEach(IdUtil::raise);
+        for (String id : usedIds) {
+            int i = 0;
+            while (i < id.length() && !Character.isDigit(id.charAt(i))) i++;
+            if (i == 0 || i == id.length()) continue;
+            try {
+                raise(id.substring(0, i), Long.parseLong(id.substring(i)));
+            } catch (NumberFormatException ignored) {}
+        }
+        epoch++;
+    }
+
+    private static void raise(String prefix, long mark) {
+        highWater.computeIfAbsent(prefix, k -> new AtomicLong()).accumulateAndGet(mark, Math::max);
     }
 
     // Optional: reset IDs for testing
     public static void reset() {
-        counters.clear();
+        highWater.clear();
+        epoch++;
     }
 }
@@ -0,0 +1,169 @@
+package service;
+
+import model.*;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Finds the fewest relocations that empty a single or double room for an
+ * isolation resident. Searches a copy of the bed state by iterative deepening
+ * on the number of moves, pruned by how many occupants the closest-to-empty
+ * candidate room still has. A move only puts a resident in a room that then
+ * holds one gender and no isolation resident; isolation residents are never
+ * moved and nobody moves twice. Gives up past MAX_MOVES or the time budget.
+ */
+class IsolationPlanner {
+    static final int MAX_MOVES = 6;
+
+    private final Bed[] beds;
+    private final int[] roomOf;         // bed -> room
+    private final Resident[] occupant;  // bed -> resident, or null when vacant
+    private final int[][] bedsOf;       // room -> its beds
+    private final int[] male, female, isolated;
+    private final int[] candidates;     // rooms of one or two beds, singles first
+    private final Set<Resident> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<int[]> path = new ArrayDeque<>();
+    private long deadline, nodes;
+    private boolean timedOut;
+    private int freed = -1;
+
+    /** Copies the rooms' current beds; the caller keeps them from changing meanwhile. */
+    IsolationPlanner(List<Room> rooms) {
+        int n = 0;
+        for (Room r : rooms) n += r.size();
+        beds = new Bed[n];
+        roomOf = new int[n];
+        occupant = new Resident[n];
+        bedsOf = new int[rooms.size()][];
+        male = new int[rooms.size()];
+        female = new int[rooms.size()];
+        isolated = new int[rooms.size()];
+        List<Integer> small = new ArrayList<>();
+        int b = 0;
+        for (int r = 0; r < rooms.size(); r++) {
+            List<Bed> rb = rooms.get(r).getBeds();
+            bedsOf[r] = new int[rb.size()];
+            for (int i = 0; i < rb.size(); i++, b++) {
+                beds[b] = rb.get(i);
+                roomOf[b] = r;
+                bedsOf[r][i] = b;
+                Resident res = rb.get(i).getResident();
+                if (res != null) put(b, res);
+            }
+            if (rb.size() <= 2) small.add(r);
+        }
+        small.sort(Comparator.comparingInt(r -> bedsOf[r].length));
+        candidates = small.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    boolean timedOut() {
+        return timedOut;
+    }
+
+    /** The shortest plan found within the budget, or empty if there is none (or time ran out). */
+    Optional<MovePlan> plan(String residentId, Duration budget) {
+        deadline = System.nanoTime() + budget.toNanos();
+        int h = remaining();
+        if (h < 0) return Optional.empty();
+        for (int limit = h; limit <= MAX_MOVES && !timedOut; limit++) {
+            if (search(0, limit)) {
+                List<MovePlan.Move> moves = new ArrayList<>();
+                for (Iterator<int[]> it = path.descendingIterator(); it.hasNext(); ) {
+                    int[] m = it.next();
+                    moves.add(new MovePlan.Move(occupant[m[1]].getId(), beds[m[0]].getId(), beds[m[1]].getId()));
+                }
+                return Optional.of(new MovePlan(residentId, moves, beds[bedsOf[freed][0]].getId()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean search(int depth, int limit) {
+        int h = remaining();
+        if (h == 0) return true;
+        if (depth + h > limit) return false;
+        if ((++nodes & 255) == 0 && System.nanoTime() > deadline) timedOut = true;
+        if (timedOut) return false;
+
+        // Empty a candidate room that can still be emptied within the limit
+        for (int c : candidates) {
+            if (isolated[c] > 0 || depth + occupied(c) > limit) continue;
+            for (int b : bedsOf[c])
+                if (occupant[b] != null && tryMoves(b, depth, limit)) return true;
+        }
+        // Otherwise make room elsewhere: any other movable resident, if a move is left to spare
+        if (depth + 1 + h > limit) return false;
+        for (int b = 0; b < beds.length; b++) {
+            if (occupant[b] == null || isCandidate(roomOf[b])) continue;
+            if (tryMoves(b, depth, limit)) return true;
+        }
+        return false;
+    }
+
+    // Tries the resident in bed {@code from} in the first vacant bed of each room that accepts it
+    private boolean tryMoves(int from, int depth, int limit) {
+        Resident r = occupant[from];
+        if (r.isIsolation() || moved.contains(r)) return false;
+        int fromRoom = roomOf[from];
+        for (int room = 0; room < bedsOf.length; room++) {
+            if (room == fromRoom || !accepts(room, r)) continue;
+            int to = firstVacant(room);
+            take(from);
+            put(to, r);
+            moved.add(r);
+            path.push(new int[]{from, to});
+            if (search(depth + 1, limit)) return true;
+            path.pop();
+            moved.remove(r);
+            take(to);
+            put(from, r);
+        }
+        return false;
+    }
+
+    // Occupants left in the emptiest candidate room without an isolation resident; -1 if none qualifies
+    private int remaining() {
+        int best = -1;
+        for (int c : candidates) {
+            if (isolated[c] > 0) continue;
+            int occ = occupied(c);
+            if (best < 0 || occ < best) { best = occ; freed = c; }
+            if (best == 0) break;
+        }
+        return best;
+    }
+
+    private boolean accepts(int room, Resident r) {
+        if (occupied(room) == bedsOf[room].length || isolated[room] > 0) return false;
+        return r.getGender() == Gender.MALE ? female[room] == 0 : male[room] == 0;
+    }
+
+    private boolean isCandidate(int room) {
+        return bedsOf[room].length <= 2;
+    }
+
+    private int occupied(int room) {
+        return male[room] + female[room];
+    }
+
+    private int firstVacant(int room) {
+        for (int b : bedsOf[room]) if (occupant[b] == null) return b;
+        throw new IllegalStateException("room " + room + " is full");
+    }
+
+    private void put(int bed, Resident r) {
+        occupant[bed] = r;
+        count(roomOf[bed], r, 1);
+    }
+
+    private void take(int bed) {
+        count(roomOf[bed], occupant[bed], -1);
+        occupant[bed] = null;
+    }
+
+    private void count(int room, Resident r, int delta) {
+        if (r.getGender() == Gender.MALE) male[room] += delta; else female[room] += delta;
+        if (r.isIsolation()) isolated[room] += delta;
+    }
+}
@@ -0,0 +1,209 @@
+package service;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of service mutations since the last snapshot. Each record is
+ * framed as {@code [length][seq, op, args...][crc32]}, or for a batch that must
+ * replay whole as {@code [length][seq, BATCH, count, (op, args...)...][crc32]};
+ * a torn record at the tail (crash mid-write) fails its length or checksum and
+ * is cut off on open.
+ */
+class Journal implements Closeable {
+    private static final int BATCH = 0xFF;
+    private static final int MAX_RECORD = 1 << 26;
+
+    static final class Entry {
+        final long seq; final Mutation op; final String[] args;
+        Entry(long seq, Mutation op, String[] args) { this.seq = seq; this.op = op; this.args = args; }
+    }
+
+    private final Path path;
+    private FileOutputStream out;
+    private DataOutputStream data;
+    private long lastSeq;
+    private int entries;
+    private long validLength;
+    private long length; // bytes appended, buffered or not
+    private long batchStart = -1;
+    private int batchEntries;
+
+    Journal(Path path) throws IOException {
+        this.path = path;
+        long valid = 0;
+        if (Files.exists(path)) {
+            for (Entry e : readAll()) { lastSeq = e.seq; entries++; }
+            valid = validLength;
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                if (ch.size() > valid) ch.truncate(valid);
+            }
+        }
+        length = valid;
+        openForAppend();
+    }
+
+    private void openForAppend() throws IOException {
+        out = new FileOutputStream(path.toFile(), true);
+        data = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    synchronized long append(Mutation op, String... args) throws IOException {
+        long seq = ++lastSeq;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(buf);
+        payload.writeLong(seq);
+        writeChange(payload, op, args);
+        writeRecord(buf.toByteArray());
+        entries++;
+        return seq;
+    }
+
+    /** Appends the changes as a single record under one sequence number, so they replay together or not at all. */
+    synchronized long appendAll(List<StoreBackend.Change> changes) throws IOException {
+        long seq = ++lastSeq;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64 * changes.size());
+        DataOutputStream payload = new DataOutputStream(buf);
+        payload.writeLong(seq);
+        payload.writeByte(BATCH);
+        payload.writeInt(changes.size());
+        for (StoreBackend.Change c : changes) writeChange(payload, c.op, c.args);
+        byte[] bytes = buf.toByteArray();
+        if (bytes.length > MAX_RECORD) throw new IOException("Batch of " + changes.size() + " changes is too large to journal");
+        long start = length;
+        try {
+            writeRecord(bytes);
+        } catch (IOException e) {
+            try { truncate(start); } catch (IOException t) { e.addSuppressed(t); }
+            throw e;
+        }
+        entries += changes.size();
+        batchStart = start;
+        batchEntries = changes.size();
+        return seq;
+    }
+
+    /**
+     * Cuts the last {@link #appendAll} batch off the file, synced or not, so it is
+     * never replayed. Anything appended after it goes too; the caller makes sure
+     * nothing was.
+     */
+    synchronized void discardLastBatch() throws IOException {
+        if (batchStart < 0) return;
+        truncate(batchStart);
+        entries -= batchEntries;
+        batchStart = -1;
+    }
+
+    private void truncate(long to) throws IOException {
+        try {
+            data.close(); // what is still buffered before the cut belongs in the file
+        } catch (IOException ignored) {
+            // the cut below still has to happen; the caller snapshots next
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (ch.size() > to) ch.truncate(to);
+            ch.force(true);
+        } finally {
+            openForAppend();
+        }
+        length = to;
+    }
+
+    private static void writeChange(DataOutputStream payload, Mutation op, String[] args) throws IOException {
+        payload.writeByte(op.ordinal());
+        payload.writeByte(args.length);
+        for (String a : args) payload.writeUTF(a);
+    }
+
+    private void writeRecord(byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+        data.writeInt((int) crc.getValue());
+        length += 4 + bytes.length + 4;
+    }
+
+    /** Forces everything appended so far to disk. */
+    synchronized void sync() throws IOException {
+        data.flush();
+        out.getChannel().force(false);
+    }
+
+    /** Drops all entries once a snapshot covering them is safely on disk. Sequence numbers keep counting. */
+    synchronized void reset() throws IOException {
+        data.flush();
+        out.getChannel().truncate(0);
+        out.getChannel().force(true);
+        entries = 0;
+        length = 0;
+        batchStart = -1;
+    }
+
+    synchronized int size() {
+        return entries;
+    }
+
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /** Keeps sequence numbers ahead of a loaded snapshot even when the journal file was emptied. */
+    synchronized void advanceTo(long seq) {
+        if (lastSeq < seq) lastSeq = seq;
+    }
+
+    synchronized List<Entry> readAfter(long seq) throws IOException {
+        data.flush();
+        List<Entry> result = new ArrayList<>();
+        for (Entry e : readAll()) if (e.seq > seq) result.add(e);
+        return result;
+    }
+
+    private List<Entry> readAll() throws IOException {
+        List<Entry> result = new ArrayList<>();
+        validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int len;
+                try { len = in.readInt(); } catch (EOFException end) { break; }
+                if (len <= 0 || len > MAX_RECORD) break;
+                byte[] bytes = new byte[len];
+                int crcValue;
+                try {
+                    in.readFully(bytes);
+                    crcValue = in.readInt();
+                } catch (EOFException torn) { break; }
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != crcValue) break;
+                DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+                long seq = payload.readLong();
+                int op = payload.readUnsignedByte();
+                if (op != BATCH) {
+                    result.add(readChange(seq, op, payload));
+                } else {
+                    for (int i = payload.readInt(); i > 0; i--) result.add(readChange(seq, payload.readUnsignedByte(), payload));
+                }
+                validLength += 4 + len + 4;
+            }
+        }
+        return result;
+    }
+
+    private static Entry readChange(long seq, int op, DataInputStream payload) throws IOException {
+        String[] args = new String[payload.readUnsignedByte()];
+        for (int i = 0; i < args.length; i++) args[i] = payload.readUTF();
+        return new Entry(seq, Mutation.values()[op], args);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+    }
+}
@@ -0,0 +1,226 @@
+package service;
+
+import model.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.*;
+import java.util.*;
+
+/**
+ * Reads a store Java-serialized by the first release, before the model classes
+ * declared a serialVersionUID. Those class fingerprints no longer match, and
+ * medicines, doses and administrations have since changed type, so the stream
+ * is parsed here into plain field maps and the model rebuilt through its
+ * constructors. Understands only what that store contains: objects, strings,
+ * enums, ArrayList, HashMap and java.time values.
+ */
+final class LegacySnapshot {
+    private static final byte TC_NULL = 0x70, TC_REFERENCE = 0x71, TC_CLASSDESC = 0x72, TC_OBJECT = 0x73,
+            TC_STRING = 0x74, TC_BLOCKDATA = 0x77, TC_ENDBLOCKDATA = 0x78, TC_BLOCKDATALONG = 0x7A,
+            TC_ENUM = 0x7E;
+    private static final int BASE_HANDLE = 0x7E0000;
+    private static final byte SC_WRITE_METHOD = 0x01, SC_EXTERNALIZABLE = 0x04;
+
+    private final DataInputStream in;
+    private final List<Object> handles = new ArrayList<>();
+
+    private static final class Desc {
+        final String name; byte flags; Desc parent;
+        final List<String> fieldNames = new ArrayList<>(); final List<Character> fieldTypes = new ArrayList<>();
+        Desc(String name) { this.name = name; }
+    }
+
+    // An object as written: its declared fields, then whatever its writeObject added
+    private static final class Obj {
+        final String type;
+        final Map<String, Object> fields = new HashMap<>();
+        final List<Object> written = new ArrayList<>();
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Obj(String type) { this.type = type; }
+        Object get(String field) { return fields.get(field); }
+        String string(String field) { return (String) fields.get(field); }
+    }
+
+    private LegacySnapshot(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    static DataStore read(Path file) throws IOException {
+        try (InputStream s = new BufferedInputStream(Files.newInputStream(file))) {
+            LegacySnapshot r = new LegacySnapshot(s);
+            if (r.in.readShort() != (short) 0xACED || r.in.readShort() != 5)
+                throw new IOException(file + " is not a Java-serialized store");
+            Object root = r.content(r.in.readByte());
+            if (!(root instanceof Obj o) || !o.type.equals("service.DataStore"))
+                throw new IOException(file + " does not hold a DataStore");
+            return toStore(o);
+        } catch (ClassCastException | IndexOutOfBoundsException | NullPointerException | DateTimeException e) {
+            throw new IOException(file + " is not in the first release's store layout", e);
+        }
+    }
+
+    private Object content(byte tc) throws IOException {
+        switch (tc) {
+            case TC_NULL: return null;
+            case TC_REFERENCE: return handles.get(in.readInt() - BASE_HANDLE);
+            case TC_STRING: {
+                String s = in.readUTF();
+                handles.add(s);
+                return s;
+            }
+            case TC_ENUM: {
+                classDesc(in.readByte());
+                int h = handle(null);
+                String constant = (String) content(in.readByte());
+                handles.set(h, constant);
+                return constant;
+            }
+            case TC_OBJECT: {
+                Desc d = classDesc(in.readByte());
+                Obj o = new Obj(d.name);
+                int h = handle(o);
+                Deque<Desc> chain = new ArrayDeque<>();
+                for (Desc c = d; c != null; c = c.parent) chain.push(c);
+                for (Desc c : chain) {
+                    if ((c.flags & SC_EXTERNALIZABLE) != 0) { annotations(o); continue; }
+                    for (int i = 0; i < c.fieldNames.size(); i++) o.fields.put(c.fieldNames.get(i), value(c.fieldTypes.get(i)));
+                    if ((c.flags & SC_WRITE_METHOD) != 0) annotations(o);
+                }
+                if (!o.type.equals("java.time.Ser")) return o;
+                Object resolved = time(new DataInputStream(new ByteArrayInputStream(o.data.toByteArray())));
+                handles.set(h, resolved);
+                return resolved;
+            }
+            default: throw new StreamCorruptedException(String.format("unexpected type code %02X", tc));
+        }
+    }
+
+    private Desc classDesc(byte tc) throws IOException {
+        if (tc == TC_NULL) return null;
+        if (tc == TC_REFERENCE) return (Desc) handles.get(in.readInt() - BASE_HANDLE);
+        if (tc != TC_CLASSDESC) throw new StreamCorruptedException(String.format("unexpected class type code %02X", tc));
+        Desc d = new Desc(in.readUTF());
+        in.readLong(); // serialVersionUID, deliberately not checked
+        handle(d);
+        d.flags = in.readByte();
+        for (int i = in.readShort(); i > 0; i--) {
+            char type = (char) in.readByte();
+            d.fieldTypes.add(type);
+            d.fieldNames.add(in.readUTF());
+            if (type == 'L' || type == '[') content(in.readByte()); // the field's class name
+        }
+        annotations(new Obj(d.name));
+        d.parent = classDesc(in.readByte());
+        return d;
+    }
+
+    private Object value(char type) throws IOException {
+        return switch (type) {
+            case 'B' -> in.readByte();
+            case 'C' -> in.readChar();
+            case 'D' -> in.readDouble();
+            case 'F' -> in.readFloat();
+            case 'I' -> in.readInt();
+            case 'J' -> in.readLong();
+            case 'S' -> in.readShort();
+            case 'Z' -> in.readBoolean();
+            default -> content(in.readByte());
+        };
+    }
+
+    // Block data and objects up to the end marker
+    private void annotations(Obj o) throws IOException {
+        for (byte tc = in.readByte(); tc != TC_ENDBLOCKDATA; tc = in.readByte()) {
+            if (tc == TC_BLOCKDATA || tc == TC_BLOCKDATALONG) {
+                byte[] b = new byte[tc == TC_BLOCKDATA ? in.readUnsignedByte() : in.readInt()];
+                in.readFully(b);
+                o.data.write(b);
+            } else {
+                o.written.add(content(tc));
+            }
+        }
+    }
+
+    private int handle(Object o) {
+        handles.add(o);
+        return handles.size() - 1;
+    }
+
+    // The external form of java.time.Ser: a type byte, then the value
+    private static Object time(DataInputStream d) throws IOException {
+        return switch (d.readByte()) {
+            case 3 -> date(d);
+            case 4 -> clock(d);
+            case 5 -> LocalDateTime.of(date(d), clock(d));
+            default -> throw new StreamCorruptedException("unsupported java.time value");
+        };
+    }
+
+    private static LocalDate date(DataInputStream d) throws IOException {
+        return LocalDate.of(d.readInt(), d.readByte(), d.readByte());
+    }
+
+    private static LocalTime clock(DataInputStream d) throws IOException {
+        int hour = d.readByte(), minute = 0, second = 0, nano = 0;
+        if (hour < 0) hour = ~hour;
+        else if ((minute = d.readByte()) < 0) minute = ~minute;
+        else if ((second = d.readByte()) < 0) second = ~second;
+        else nano = d.readInt();
+        return LocalTime.of(hour, minute, second, nano);
+    }
+
+    private static List<Obj> list(Object arrayList) {
+        List<Obj> out = new ArrayList<>();
+        for (Object o : ((Obj) arrayList).written) out.add((Obj) o);
+        return out;
+    }
+
+    // HashMap values; the keys are the ids the values carry anyway
+    private static List<Obj> values(Object hashMap) {
+        List<Object> kv = ((Obj) hashMap).written;
+        List<Obj> out = new ArrayList<>();
+        for (int i = 1; i < kv.size(); i += 2) out.add((Obj) kv.get(i));
+        return out;
+    }
+
+    private static DataStore toStore(Obj root) {
+        DataStore ds = new DataStore();
+        for (Obj s : values(root.get("staff"))) {
+            String id = s.string("id"), username = s.string("username"), password = s.string("password");
+            Staff st = switch (Role.valueOf(s.string("role"))) {
+                case MANAGER -> new Manager(id, username, password);
+                case DOCTOR -> new Doctor(id, username, password);
+                case NURSE -> new Nurse(id, username, password);
+            };
+            for (Obj sh : list(s.get("shifts")))
+                st.assignShift(new Shift(DayOfWeek.valueOf(sh.string("day")), (LocalTime) sh.get("start"), (LocalTime) sh.get("end")));
+            ds.staff.put(id, st);
+        }
+        for (Obj r : values(root.get("residents"))) {
+            Resident res = new Resident(r.string("id"), r.string("name"), Gender.valueOf(r.string("gender")), (Boolean) r.get("isolation"));
+            for (Obj p : list(r.get("prescriptions"))) {
+                Prescription pr = new Prescription(p.string("id"), p.string("doctorId"), (LocalDateTime) p.get("createdAt"));
+                for (Obj o : list(p.get("orders")))
+                    pr.addOrder(new MedicationOrder(o.string("medicine"), o.string("dose"), (LocalTime) o.get("time")));
+                res.addPrescription(pr);
+            }
+            for (Obj a : list(r.get("administrations")))
+                res.addAdministration(new AdministrationRecord(a.string("medicine"), a.string("dose"),
+                        (LocalDateTime) a.get("at"), a.string("nurseId")));
+            ds.residents.put(res.getId(), res);
+        }
+        for (Obj w : list(root.get("wards"))) {
+            Ward ward = new Ward(w.string("id"), (Boolean) w.get("malePreferred"));
+            for (Obj b : list(w.get("beds"))) {
+                Bed bed = new Bed(b.string("id"));
+                Obj occupant = (Obj) b.get("resident");
+                if (occupant != null) bed.assign(ds.residents.get(occupant.string("id")));
+                ward.addBed(bed);
+            }
+            ds.wards.add(ward);
+        }
+        return ds;
+    }
+}
@@ -1,25 +1,38 @@
 package service;
 
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import exception.BedOccupiedException;
 import model.*;
 
+import java.io.File;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
 public class MainView {
-    private final CareHomeService svc = CareHomeService.get();
-    private final int[] ROOM_LAYOUT = {1, 2, 4, 4, 4, 4}; // total 19 beds per ward
+    private final CareHomeService svc;
+    // How long the isolation move planner may search before giving up
+    private static final Duration PLAN_BUDGET = Duration.ofMillis(500);
+
+    public MainView(CareHomeService svc) {
+        this.svc = svc;
+    }
 
     public void show(Stage stage){
+        WardBoard board = new WardBoard(svc);
         BorderPane root = new BorderPane();
         root.setPadding(new Insets(10));
 
@@ -27,65 +40,32 @@ public class MainView {
         HBox top = new HBox(10);
         top.setAlignment(Pos.CENTER_LEFT);
         Label userLbl = new Label("Logged in: " + Session.get().getCurrentUser().getUsername() +
-                " ("+Session.get().getCurrentUser().getRole()+")");
+                " ("+Session.get().getCurrentUser().getRole()+") at " + svc.getFacilityId());
+        Label saveStatus = new Label(svc.autosave().getStatus().toString());
+        Consumer<Autosave.Status> statusListener = st -> Platform.runLater(() -> saveStatus.setText(st.toString()));
+        svc.autosave().addListener(statusListener);
         Button btnSave = new Button("Save");
-        btnSave.setOnAction(e->{ try { svc.save(); UIHelpers.info("Saved","Data serialized."); } catch(Exception ex){ UIHelpers.info("Error", ex.getMessage()); } });
+        btnSave.setOnAction(e-> svc.autosave().saveNow().thenAccept(st -> {
+            if (st.getState() == Autosave.State.FAILED) Platform.runLater(() -> UIHelpers.info("Error", st.getError()));
+        }));
         Button btnCompliance = new Button("Check Compliance");
-        btnCompliance.setOnAction(e->{ try { svc.checkCompliance(); UIHelpers.info("OK","All staff rosters comply."); } catch (Exception ex){ UIHelpers.info("Compliance Failed", ex.getMessage()); }});
+        btnCompliance.setOnAction(e->{
+            ComplianceReport report = svc.complianceReport();
+            UIHelpers.info(report.isCompliant() ? "OK" : "Compliance Failed", report.toString());
+        });
         Button btnLogout = new Button("Logout");
         btnLogout.setOnAction(e->{ 
-            try { svc.save(); } 
-            catch (Exception ex) { UIHelpers.info("Error", "Failed to save: " + ex.getMessage()); }
+            svc.autosave().saveNow().thenAccept(st -> {
+                if (st.getState() == Autosave.State.FAILED)
+                    Platform.runLater(() -> UIHelpers.info("Error", "Failed to save: " + st.getError()));
+            });
+            AuditLog.flush();
+            board.dispose();
+            svc.autosave().removeListener(statusListener);
             Session.get().setCurrentUser(null); 
             new AppFX().showLogin(stage); 
         });
-        top.getChildren().addAll(userLbl, btnSave, btnCompliance, btnLogout);
-
-        // Center wards
-        HBox wardsPane = new HBox(20);
-        wardsPane.setPadding(new Insets(10));
-        for (Ward w: svc.getWards()){
-            VBox wardBox = new VBox(8);
-            wardBox.setPadding(new Insets(8));
-            wardBox.setStyle("-fx-border-color: #8aa; -fx-border-radius: 4; -fx-padding: 8;");
-            Label title = new Label(w.getId());
-            title.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
-            GridPane grid = new GridPane();
-            grid.setHgap(10);
-            grid.setVgap(10);
-
-            int bedIndex = 0;
-            int roomIdx = 0;
-            for (int r=0; r<3; r++){
-                for (int c=0; c<2; c++){
-                    if (roomIdx >= ROOM_LAYOUT.length) break;
-                    int bedsInRoom = ROOM_LAYOUT[roomIdx];
-                    roomIdx++;
-
-                    VBox room = new VBox(5);
-                    room.setAlignment(Pos.CENTER);
-                    room.setPadding(new Insets(6));
-                    room.setStyle("-fx-border-color: #ccd; -fx-background-color: #f9fbff;");
-                    GridPane roomBeds = new GridPane();
-                    roomBeds.setHgap(5);
-                    roomBeds.setVgap(5);
-
-                    for (int i=0; i<bedsInRoom; i++){
-                        if (bedIndex >= w.getBeds().size()) break;
-                        Bed bed = w.getBeds().get(bedIndex++);
-                        Button bedBtn = bedButton(bed);
-                        int col = (bedsInRoom == 1) ? 0 : i % 2;
-                        int row = (bedsInRoom == 1) ? 0 : i / 2;
-                        roomBeds.add(bedBtn, col, row);
-                    }
-
-                    room.getChildren().add(roomBeds);
-                    grid.add(room, c, r);
-                }
-            }
-            wardBox.getChildren().addAll(title, grid);
-            wardsPane.getChildren().add(wardBox);
-        }
+        top.getChildren().addAll(userLbl, btnSave, btnCompliance, btnLogout, saveStatus);
 
         // Right panel (Actions + Legend)
         VBox rightPanel = new VBox(20);
@@ -97,16 +77,18 @@ public class MainView {
         Staff u = Session.get().getCurrentUser();
         if (u.getRole()==Role.MANAGER){
             Button addResident = new Button("Add Resident & Auto-Allocate");
-            addResident.setOnAction(e-> { addResidentFlow(stage); });
+            addResident.setOnAction(e-> addResidentFlow());
             Button discharge = new Button("Discharge Resident");
-            discharge.setOnAction(e->{ dischargeFlow(stage); });
+            discharge.setOnAction(e-> dischargeFlow());
             Button addStaff = new Button("Add Staff");
             addStaff.setOnAction(e-> addStaffFlow());
             Button modPass = new Button("Modify Staff Password");
             modPass.setOnAction(e-> modifyStaffPasswordFlow());
             Button modShift = new Button("Modify Staff Shift");
             modShift.setOnAction(e-> modifyStaffShiftFlow());
-            actions.getChildren().addAll(addResident, discharge, addStaff, modPass, modShift);
+            Button bulk = new Button("Bulk Admission (CSV)");
+            bulk.setOnAction(e-> bulkAdmissionFlow(stage));
+            actions.getChildren().addAll(addResident, bulk, discharge, addStaff, modPass, modShift);
             Button viewShiftsBtn = new Button("View Shift Allotments");
             viewShiftsBtn.setOnAction(e -> showShiftAllotmentsTable());
 
@@ -121,12 +103,14 @@ public class MainView {
                     if (bt == ButtonType.OK) {
                         svc.clearAllData(); // assumed implemented in service
                         UIHelpers.info("Cleared", "All data has been reset.");
-                        refresh(stage);
                     }
                 });
             });
+            Button auditBtn = new Button("Audit Trail");
+            auditBtn.setOnAction(e -> auditTrailFlow());
             actions.getChildren().add(clearData);
             actions.getChildren().add(viewShiftsBtn);
+            actions.getChildren().add(auditBtn);
 
         } else if (u.getRole()==Role.DOCTOR){
             Button addRx = new Button("Add Prescription");
@@ -138,28 +122,30 @@ public class MainView {
             actions.getChildren().add(viewShiftsBtn);
         } else if (u.getRole()==Role.NURSE){
             Button move = new Button("Move Resident");
-            move.setOnAction(e->{ moveResidentFlow(stage); });
+            move.setOnAction(e-> moveResidentFlow());
             Button admin = new Button("Administer Medication");
             admin.setOnAction(e-> administerFlow());
+            Button round = new Button("Medication Round");
+            round.setOnAction(e-> medicationRoundFlow());
             Button viewShiftsBtn = new Button("View Shift Allotments");
             viewShiftsBtn.setOnAction(e -> showShiftAllotmentsTable());
 
-            actions.getChildren().addAll(move, admin);
+            actions.getChildren().addAll(move, admin, round);
             actions.getChildren().add(viewShiftsBtn);
         }
 
         VBox legend = new VBox(5);
         legend.getChildren().add(new Label("Legend:"));
-        legend.getChildren().add(legendItem("Male", Color.CORNFLOWERBLUE));
-        legend.getChildren().add(legendItem("Female", Color.SALMON));
-        legend.getChildren().add(legendItem("Vacant", Color.WHITE));
+        legend.getChildren().add(legendItem("Male", WardBoard.MALE));
+        legend.getChildren().add(legendItem("Female", WardBoard.FEMALE));
+        legend.getChildren().add(legendItem("Vacant", WardBoard.VACANT));
         legend.setPadding(new Insets(10));
         legend.setStyle("-fx-border-color: #bbb; -fx-background-color: #fff;");
 
         rightPanel.getChildren().addAll(actions, legend);
 
         root.setTop(top);
-        root.setCenter(wardsPane);
+        root.setCenter(board.node());
         root.setRight(rightPanel);
 
         stage.setTitle("RMIT Care Home");
@@ -191,7 +177,6 @@ public class MainView {
         table.getColumns().addAll(staffCol, roleCol, dayCol, startCol, endCol);
 
         // Populate rows from service
-        CareHomeService svc = CareHomeService.get();
         for (Staff s : svc.getStaff()) {
             for (Shift sh : s.getShifts()) {
                 table.getItems().add(new ShiftRow(s.getUsername(), s.getRole().name(),
@@ -232,52 +217,19 @@ public class MainView {
     }
 
 
-    private HBox legendItem(String label, Color color){
+    private HBox legendItem(String label, Background fill){
         Region box = new Region();
         box.setMinSize(20, 20);
-        box.setBackground(new Background(new BackgroundFill(color, new CornerRadii(3), Insets.EMPTY)));
+        box.setBackground(fill);
         Label lbl = new Label(label);
         HBox h = new HBox(5, box, lbl);
         h.setAlignment(Pos.CENTER_LEFT);
         return h;
     }
 
-    private Button bedButton(Bed bed){
-        Button b = new Button();
-        b.setMinSize(70, 50);
-        b.setMaxSize(70, 50);
-        updateBedButton(bed, b);
-        b.setOnAction(e->{
-            if (bed.getResident()==null){ UIHelpers.info("Bed "+bed.getId(), "Vacant"); }
-            else {
-                Resident r = bed.getResident();
-                String details = "ID: "+r.getId()+"\nName: "+r.getName()+"\nGender: "+r.getGender()+
-                        "\nPrescriptions: "+r.getPrescriptions().size()+"\nAdministrations: "+r.getAdministrations().size();
-                UIHelpers.info("Bed "+bed.getId(), details);
-            }
-        });
-        return b;
-    }
-
-    private void updateBedButton(Bed bed, Button b){
-        if (bed.getResident()==null){
-            b.setText(bed.getId());
-            b.setBackground(new Background(new BackgroundFill(Color.WHITE, new CornerRadii(4), Insets.EMPTY)));
-        } else {
-            Color color = bed.getResident().getGender()==Gender.MALE ? Color.CORNFLOWERBLUE : Color.SALMON;
-            b.setText(bed.getId()+"\n"+bed.getResident().getId());
-            b.setBackground(new Background(new BackgroundFill(color.deriveColor(0,1,1,0.65),
-                    new CornerRadii(4), Insets.EMPTY)));
-        }
-    }
-
-    private void refresh(Stage stage){
-        new MainView().show(stage);
-    }
-
     // ==== Manager actions ====
 
-    private void addResidentFlow(Stage stage){
+    private void addResidentFlow(){
         Dialog<Resident> d = new Dialog<>();
         d.setTitle("Add Resident");
         TextField name = new TextField();
@@ -299,9 +251,12 @@ public class MainView {
             try {
                 svc.allocateResidentToBedWithGender(r, false);
                 UIHelpers.info("Success","Resident added & allocated.");
-                refresh(stage);
                 return;
             } catch (Exception ex) {
+                if (r.isIsolation()) {
+                    isolationPlanFlow(r);
+                    return;
+                }
                 // No same-gender rooms available; ask manager to confirm fallback allocation
                 String gtxt = (r.getGender()==Gender.FEMALE) ? "female" : "male";
                 Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
@@ -315,7 +270,6 @@ public class MainView {
                 if (res == yes) {
                     svc.allocateResidentToBedWithGender(r, true);
                     UIHelpers.info("Allocated","Resident allocated to the next suitable room.");
-                    refresh(stage);
                 } else {
                     UIHelpers.info("Cancelled","Resident was created but not allocated to a bed.");
                 }
@@ -325,7 +279,51 @@ public class MainView {
         }
     }
 
-    private void dischargeFlow(Stage stage){
+    // Offers the shortest set of moves that frees an isolation room, applied only if confirmed
+    private void isolationPlanFlow(Resident r) throws Exception {
+        Optional<MovePlan> plan = svc.planIsolation(r.getId(), PLAN_BUDGET);
+        if (plan.isEmpty()) {
+            UIHelpers.info("No isolation bed", "No empty single or double room, and no plan of up to "
+                    + "a few moves frees one. " + r.getName() + " was created but not allocated to a bed.");
+            return;
+        }
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("No isolation bed available");
+        confirm.setHeaderText("These moves would free a room for " + r.getName() + ":");
+        confirm.setContentText(plan.get() + "\n\nApply them now?");
+        if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            UIHelpers.info("Cancelled","Resident was created but not allocated to a bed.");
+            return;
+        }
+        svc.applyPlan(plan.get());
+        UIHelpers.info("Allocated", r.getName() + " placed in " + plan.get().getTargetBedId() + ".");
+    }
+
+    private void bulkAdmissionFlow(Stage stage){
+        FileChooser fc = new FileChooser();
+        fc.setTitle("Admit residents from CSV (name,gender,isolation)");
+        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File file = fc.showOpenDialog(stage);
+        if (file == null) return;
+        try {
+            List<Resident> admitted;
+            try {
+                admitted = svc.admitFromCsv(file.toPath(), false);
+            } catch (BedOccupiedException ex) {
+                Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+                confirm.setTitle("Not enough same-gender rooms");
+                confirm.setHeaderText(ex.getMessage());
+                confirm.setContentText("Admit the batch allowing mixed rooms where needed?");
+                if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+                admitted = svc.admitFromCsv(file.toPath(), true);
+            }
+            UIHelpers.info("Admitted", admitted.size() + " residents admitted and allocated.");
+        } catch (Exception ex){
+            UIHelpers.info("Error", ex.getMessage());
+        }
+    }
+
+    private void dischargeFlow(){
         TextInputDialog d = new TextInputDialog();
         d.setTitle("Discharge");
         d.setHeaderText("Enter Resident ID to discharge");
@@ -334,7 +332,6 @@ public class MainView {
             try { 
                 svc.discharge(id); 
                 UIHelpers.info("Discharged","Resident archived & removed."); 
-                refresh(stage);
             } catch (Exception ex){ UIHelpers.info("Error", ex.getMessage()); } 
         });
     }
@@ -484,12 +481,39 @@ public class MainView {
         } catch (Exception ex){ UIHelpers.info("Error", ex.getMessage()); }
     }
 
+    private void medicationRoundFlow(){
+        try {
+            StringBuilder sb = new StringBuilder("Overdue:\n");
+            List<DueDose> late = svc.overdueDoses();
+            if (late.isEmpty()) sb.append("  none\n");
+            for (DueDose d : late) sb.append("  ").append(d).append("\n");
+            sb.append("\nDue in the next hour:\n");
+            List<DueDose> due = svc.dueWithin(60);
+            if (due.isEmpty()) sb.append("  none\n");
+            for (DueDose d : due) sb.append("  ").append(d).append("\n");
+            UIHelpers.info("Medication Round", sb.toString());
+        } catch (Exception ex){ UIHelpers.info("Error", ex.getMessage()); }
+    }
+
+    // Free-text field that offers catalogued spellings as the user types
+    private ComboBox<String> catalogField(Function<String, List<String>> suggest){
+        ComboBox<String> box = new ComboBox<>();
+        box.setEditable(true);
+        box.getEditor().textProperty().addListener((obs, old, text) -> {
+            if (!box.getEditor().isFocused()) return;
+            List<String> hits = suggest.apply(text);
+            box.getItems().setAll(hits);
+            if (hits.isEmpty() || hits.size() == 1 && hits.get(0).equals(text)) box.hide(); else box.show();
+        });
+        return box;
+    }
+
     private void administerFlow(){
         Dialog<String[]> d = new Dialog<>();
         d.setTitle("Administer Medication");
         ComboBox<Resident> resBox = residentCombo();
-        TextField med = new TextField();
-        TextField dose = new TextField();
+        ComboBox<String> med = catalogField(svc::suggestMedicines);
+        ComboBox<String> dose = catalogField(svc::suggestDoses);
         VBox v = new VBox(8, new Label("Select Resident"), resBox,
                 new Label("Medicine"), med,
                 new Label("Dose"), dose);
@@ -498,7 +522,7 @@ public class MainView {
         d.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
         d.setResultConverter(bt -> {
             Resident r = resBox.getValue();
-            return bt==ButtonType.OK && r!=null ? new String[]{r.getId(), med.getText(), dose.getText()} : null;
+            return bt==ButtonType.OK && r!=null ? new String[]{r.getId(), med.getEditor().getText(), dose.getEditor().getText()} : null;
         });
         String[] res = d.showAndWait().orElse(null);
         if (res==null) return;
@@ -506,6 +530,39 @@ public class MainView {
         catch (Exception ex){ UIHelpers.info("Error", ex.getMessage()); }
     }
 
+    private void auditTrailFlow(){
+        Dialog<ButtonType> d = new Dialog<>();
+        d.setTitle("Audit Trail");
+        ComboBox<String> staffBox = new ComboBox<>();
+        staffBox.getItems().add("Any");
+        for (Staff s : svc.getStaff()) staffBox.getItems().add(s.getId()+" - "+s.getUsername());
+        staffBox.getSelectionModel().selectFirst();
+        TextField kind = new TextField();
+        kind.setPromptText("e.g. discharge (blank for any)");
+        DatePicker from = new DatePicker(java.time.LocalDate.now().withDayOfMonth(1));
+        DatePicker to = new DatePicker(java.time.LocalDate.now());
+        VBox v = new VBox(8, new Label("Staff"), staffBox, new Label("Action"), kind,
+                UIHelpers.spaced(new Label("From"), from, new Label("To"), to));
+        v.setPadding(new Insets(10));
+        d.getDialogPane().setContent(v);
+        d.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        if (d.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK || from.getValue()==null || to.getValue()==null) return;
+
+        String sel = staffBox.getValue();
+        String staffId = sel==null || sel.equals("Any") ? null : sel.substring(0, sel.indexOf(" - "));
+        String k = kind.getText().isBlank() ? null : kind.getText().trim();
+        try {
+            List<AuditSearch.Entry> hits = svc.auditTrail(staffId, k, from.getValue().atStartOfDay(), to.getValue().plusDays(1).atStartOfDay());
+            ListView<String> list = new ListView<>();
+            for (AuditSearch.Entry e : hits) list.getItems().add(e.toString());
+            Stage stage = new Stage();
+            stage.setTitle("Audit Trail ("+hits.size()+" entries)");
+            stage.setScene(new Scene(new VBox(list), 700, 500));
+            VBox.setVgrow(list, Priority.ALWAYS);
+            stage.show();
+        } catch (Exception ex){ UIHelpers.info("Error", ex.getMessage()); }
+    }
+
     private ComboBox<Resident> residentCombo(){
         List<Resident> residents = new java.util.ArrayList<>(svc.getResidents());
         ComboBox<Resident> box = new ComboBox<>();
@@ -520,7 +577,7 @@ public class MainView {
         return box;
     }
 
-    private void moveResidentFlow(Stage stage){
+    private void moveResidentFlow(){
         Dialog<String[]> d = new Dialog<>();
         d.setTitle("Move Resident");
         TextField from = new TextField(); from.setPromptText("From Bed ID");
@@ -535,7 +592,6 @@ public class MainView {
         try { 
             svc.moveResident(res[0], res[1]); 
             UIHelpers.info("Moved","Resident moved."); 
-            refresh(stage);
         }
         catch (Exception ex){ UIHelpers.info("Error", ex.getMessage()); }
     }
@@ -0,0 +1,138 @@
+package service;
+
+import model.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Medication administration schedule for all residents. Every active order has
+ * one open dose, the next daily occurrence of its time. Open doses wait in
+ * {@code upcoming}, ordered by due time, until they are {@link #LATE} past due;
+ * then they sit in {@code overdue} until given, or until the next occurrence
+ * opens and the dose counts as missed. A dose can be given from {@link #EARLY}
+ * before it is due. tick() only touches doses whose state changes, so it stays
+ * cheap however many orders there are.
+ */
+class MedicationScheduler {
+    static final Duration EARLY = Duration.ofHours(1);
+    static final Duration LATE = Duration.ofHours(1);
+
+    private static final class Slot {
+        final String residentId, prescriptionId; final MedicationOrder order; final long seq;
+        LocalDateTime due;
+        Slot(String residentId, String prescriptionId, MedicationOrder order, long seq, LocalDateTime due) {
+            this.residentId = residentId; this.prescriptionId = prescriptionId; this.order = order; this.seq = seq; this.due = due;
+        }
+        DueDose toDue() { return new DueDose(residentId, prescriptionId, order.getMedicine(), order.getDose(), due); }
+    }
+
+    private static final Comparator<Slot> BY_DUE = Comparator.<Slot, LocalDateTime>comparing(s -> s.due).thenComparingLong(s -> s.seq);
+
+    private final NavigableSet<Slot> upcoming = new TreeSet<>(BY_DUE);
+    private final NavigableSet<Slot> overdue = new TreeSet<>(BY_DUE);
+    private final Map<String, List<Slot>> byResident = new HashMap<>();
+    private long seq;
+    private long missed;
+
+    /**
+     * Schedules the residents' orders, crediting doses already given in the current
+     * cycle. An order in {@code addedAt} is scheduled as if it had been reported
+     * by orderAdded() then.
+     */
+    MedicationScheduler(Collection<Resident> residents, Map<MedicationOrder, LocalDateTime> addedAt, LocalDateTime now) {
+        LocalDateTime cycleStart = now.minus(Duration.ofDays(1).minus(EARLY));
+        for (Resident r : residents) {
+            for (Prescription p : r.getPrescriptions())
+                for (MedicationOrder o : p.getOrders()) add(r.getId(), p.getId(), o, addedAt.getOrDefault(o, cycleStart));
+            if (!byResident.containsKey(r.getId())) continue;
+            for (AdministrationRecord a : r.getAdministrationsBetween(cycleStart.minus(EARLY), now.plusSeconds(1)))
+                given(r.getId(), a.getMedicineCode(), a.getAt());
+        }
+        tick(now);
+    }
+
+    /** A new order's first dose is its next occurrence from {@code now}. */
+    synchronized void orderAdded(String residentId, String prescriptionId, MedicationOrder order, LocalDateTime now) {
+        add(residentId, prescriptionId, order, now);
+    }
+
+    private void add(String residentId, String prescriptionId, MedicationOrder order, LocalDateTime from) {
+        LocalDateTime due = from.toLocalDate().atTime(order.getTime());
+        if (due.isBefore(from)) due = due.plusDays(1);
+        Slot s = new Slot(residentId, prescriptionId, order, seq++, due);
+        upcoming.add(s);
+        byResident.computeIfAbsent(residentId, k -> new ArrayList<>()).add(s);
+    }
+
+    /**
+     * Marks the earliest open dose of the catalogued medicine for the resident as given and
+     * schedules its next occurrence. Returns false if no open dose matches.
+     */
+    synchronized boolean given(String residentId, int medicineCode, LocalDateTime at) {
+        Slot match = null;
+        for (Slot s : byResident.getOrDefault(residentId, List.of())) {
+            if (s.order.getMedicineCode() != medicineCode || s.due.minus(EARLY).isAfter(at)) continue;
+            if (match == null || BY_DUE.compare(s, match) < 0) match = s;
+        }
+        if (match == null) return false;
+        if (!upcoming.remove(match)) overdue.remove(match);
+        match.due = match.due.plusDays(1);
+        upcoming.add(match);
+        return true;
+    }
+
+    synchronized void residentLeft(String residentId) {
+        List<Slot> slots = byResident.remove(residentId);
+        if (slots == null) return;
+        for (Slot s : slots) {
+            if (!upcoming.remove(s)) overdue.remove(s);
+        }
+    }
+
+    /** Moves doses that went past due into overdue, and rolls missed ones on to their next occurrence. */
+    synchronized void tick(LocalDateTime now) {
+        expire(now);
+        boolean rolled = false;
+        while (!overdue.isEmpty() && !overdue.first().due.plusDays(1).minus(EARLY).isAfter(now)) {
+            Slot s = overdue.pollFirst();
+            while (!s.due.plusDays(1).minus(EARLY).isAfter(now)) {
+                s.due = s.due.plusDays(1);
+                missed++;
+            }
+            upcoming.add(s);
+            rolled = true;
+        }
+        if (rolled) expire(now);
+    }
+
+    private void expire(LocalDateTime now) {
+        while (!upcoming.isEmpty() && upcoming.first().due.plus(LATE).isBefore(now)) overdue.add(upcoming.pollFirst());
+    }
+
+    /** Open doses due up to {@code window} from now, overdue ones excluded. */
+    synchronized List<DueDose> dueWithin(Duration window, LocalDateTime now) {
+        tick(now);
+        List<DueDose> out = new ArrayList<>();
+        LocalDateTime until = now.plus(window);
+        for (Slot s : upcoming) {
+            if (s.due.isAfter(until)) break;
+            out.add(s.toDue());
+        }
+        return out;
+    }
+
+    synchronized List<DueDose> overdue(LocalDateTime now) {
+        tick(now);
+        List<DueDose> out = new ArrayList<>(overdue.size());
+        for (Slot s : overdue) out.add(s.toDue());
+        return out;
+    }
+
+    /** Doses that were never given before their next occurrence opened. */
+    synchronized long missedCount() {
+        return missed;
+    }
+}
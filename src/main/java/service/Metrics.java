@@ -0,0 +1,228 @@
+package service;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation call counts, failures by exception type and latency histograms
+ * for the service hot paths. Recording is lock free: striped adders plus one
+ * atomic bucket increment per call, so it stays on in production. The numbers
+ * are published as the {@code carehome:type=Metrics} MXBean, and every call is
+ * also a {@code carehome.Operation} Flight Recorder event when a recording is on.
+ */
+public final class Metrics {
+
+    /** A timed unit of work; {@code E} lets callers keep their own checked exceptions. */
+    @FunctionalInterface
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    @FunctionalInterface
+    public interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    public static final Op LOGIN = new Op("login");
+    public static final Op ALLOCATE = new Op("allocateResidentToBed");
+    public static final Op ALLOCATE_WITH_GENDER = new Op("allocateResidentToBedWithGender");
+    public static final Op MOVE = new Op("moveResident");
+    public static final Op ADMINISTER = new Op("administer");
+    public static final Op DISCHARGE = new Op("discharge");
+    public static final Op CHECK_COMPLIANCE = new Op("checkCompliance");
+    public static final Op SAVE = new Op("save");
+    public static final Op LOAD = new Op("load");
+
+    private static final List<Op> OPS = List.of(LOGIN, ALLOCATE, ALLOCATE_WITH_GENDER, MOVE, ADMINISTER,
+            DISCHARGE, CHECK_COMPLIANCE, SAVE, LOAD);
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MetricsMXBean.OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(new Bean(), name);
+        } catch (JMException | SecurityException e) {
+            System.err.println("Metrics MXBean not registered: " + e);
+        }
+    }
+
+    private Metrics() {}
+
+    public static List<OperationStats> snapshot() {
+        List<OperationStats> out = new ArrayList<>(OPS.size());
+        for (Op op : OPS) out.add(op.stats());
+        return out;
+    }
+
+    public static Optional<OperationStats> of(String operation) {
+        for (Op op : OPS) if (op.name.equals(operation)) return Optional.of(op.stats());
+        return Optional.empty();
+    }
+
+    public static void reset() {
+        for (Op op : OPS) op.reset();
+    }
+
+    /** One instrumented operation. */
+    public static final class Op {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        private final Histogram latency = new Histogram();
+
+        private Op(String name) {
+            this.name = name;
+        }
+
+        public <T, E extends Exception> T call(Action<T, E> action) throws E {
+            OperationEvent event = new OperationEvent();
+            event.begin();
+            long t0 = System.nanoTime();
+            Exception failure = null;
+            try {
+                return action.run();
+            } catch (Exception e) {
+                failure = e;
+                throw e;
+            } finally {
+                done(t0, failure, event);
+            }
+        }
+
+        public <E extends Exception> void run(Task<E> task) throws E {
+            call(() -> { task.run(); return null; });
+        }
+
+        private void done(long t0, Exception failure, OperationEvent event) {
+            long nanos = System.nanoTime() - t0;
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            latency.record(nanos);
+            String error = failure == null ? null : failure.getClass().getSimpleName();
+            if (error != null) errors.computeIfAbsent(error, k -> new LongAdder()).increment();
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.error = error;
+                Session s = Session.get();
+                event.staffId = s.getCurrentUser() == null ? null : s.getCurrentUser().getId();
+                event.commit();
+            }
+        }
+
+        OperationStats stats() {
+            Map<String, Long> errorCounts = new TreeMap<>();
+            errors.forEach((k, v) -> errorCounts.put(k, v.sum()));
+            long[] buckets = latency.copy();
+            long n = 0;
+            for (long b : buckets) n += b;
+            long max = maxNanos.get();
+            return new OperationStats(name, calls.sum(), errorCounts, n == 0 ? 0 : totalNanos.sum() / n,
+                    Histogram.percentile(buckets, n, 0.50, max), Histogram.percentile(buckets, n, 0.90, max),
+                    Histogram.percentile(buckets, n, 0.99, max), Histogram.percentile(buckets, n, 0.999, max), max);
+        }
+
+        void reset() {
+            calls.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            errors.clear();
+            latency.reset();
+        }
+    }
+
+    /**
+     * Log-linear buckets: exact below 16ns, then 8 buckets per power of two, so a
+     * reported percentile is within 12.5% of the true value.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3, LINEAR = 16;
+        private static final int BUCKETS = LINEAR + (63 - 4) * (1 << SUB_BITS);
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos) {
+            counts.incrementAndGet(index(Math.max(nanos, 0)));
+        }
+
+        static int index(long v) {
+            if (v < LINEAR) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (exp - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            return LINEAR + ((exp - 4) << SUB_BITS) + sub;
+        }
+
+        // Largest value that falls in bucket i
+        static long upperBound(int i) {
+            if (i < LINEAR) return i;
+            int exp = ((i - LINEAR) >> SUB_BITS) + 4, sub = (i - LINEAR) & ((1 << SUB_BITS) - 1);
+            long width = 1L << (exp - SUB_BITS);
+            return ((1L << SUB_BITS) + sub) * width + width - 1;
+        }
+
+        long[] copy() {
+            long[] out = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) out[i] = counts.get(i);
+            return out;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        }
+
+        static long percentile(long[] buckets, long n, double q, long max) {
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n), seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+    }
+
+    /** Point-in-time figures for one operation; latencies are in nanoseconds. */
+    public static final class OperationStats {
+        private final String operation;
+        private final long count;
+        private final Map<String, Long> errors;
+        private final long meanNanos, p50Nanos, p90Nanos, p99Nanos, p999Nanos, maxNanos;
+
+        OperationStats(String operation, long count, Map<String, Long> errors, long meanNanos,
+                       long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+            this.operation = operation; this.count = count; this.errors = Collections.unmodifiableMap(errors);
+            this.meanNanos = meanNanos; this.p50Nanos = p50Nanos; this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos; this.p999Nanos = p999Nanos; this.maxNanos = maxNanos;
+        }
+
+        public String getOperation() { return operation; }
+        public long getCount() { return count; }
+        public long getErrorCount() { return errors.values().stream().mapToLong(Long::longValue).sum(); }
+        /** Failures keyed by exception simple name, e.g. BedOccupiedException. */
+        public Map<String, Long> getErrors() { return errors; }
+        public long getMeanNanos() { return meanNanos; }
+        public long getP50Nanos() { return p50Nanos; }
+        public long getP90Nanos() { return p90Nanos; }
+        public long getP99Nanos() { return p99Nanos; }
+        public long getP999Nanos() { return p999Nanos; }
+        public long getMaxNanos() { return maxNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d calls, %d errors, p50 %.1fus p99 %.1fus max %.1fus",
+                    operation, count, getErrorCount(), p50Nanos / 1e3, p99Nanos / 1e3, maxNanos / 1e3);
+        }
+    }
+
+    private static final class Bean implements MetricsMXBean {
+        @Override public List<OperationStats> getOperations() { return snapshot(); }
+        @Override public void reset() { Metrics.reset(); }
+    }
+}
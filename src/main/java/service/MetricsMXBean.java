@@ -0,0 +1,12 @@
+package service;
+
+import java.util.List;
+
+/** JMX view of {@link Metrics}, registered as {@value #OBJECT_NAME}. */
+public interface MetricsMXBean {
+    String OBJECT_NAME = "carehome:type=Metrics";
+
+    List<Metrics.OperationStats> getOperations();
+
+    void reset();
+}
@@ -0,0 +1,37 @@
+package service;
+
+import java.util.List;
+
+/**
+ * Relocations that free an isolation room, and the bed the isolation resident
+ * then takes. Produced by {@link CareHomeService#planIsolation} for preview and
+ * carried out as a whole by {@link CareHomeService#applyPlan}.
+ */
+public class MovePlan {
+
+    public static final class Move {
+        private final String residentId, fromBedId, toBedId;
+        Move(String residentId, String fromBedId, String toBedId) {
+            this.residentId = residentId; this.fromBedId = fromBedId; this.toBedId = toBedId;
+        }
+        public String getResidentId() { return residentId; }
+        public String getFromBedId() { return fromBedId; }
+        public String getToBedId() { return toBedId; }
+        @Override public String toString() { return "move " + residentId + " " + fromBedId + "->" + toBedId; }
+    }
+
+    private final String residentId; private final List<Move> moves; private final String targetBedId;
+    MovePlan(String residentId, List<Move> moves, String targetBedId) {
+        this.residentId = residentId; this.moves = List.copyOf(moves); this.targetBedId = targetBedId;
+    }
+    public String getResidentId() { return residentId; }
+    public List<Move> getMoves() { return moves; }
+    public String getTargetBedId() { return targetBedId; }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < moves.size(); i++) sb.append(i + 1).append(". ").append(moves.get(i)).append('\n');
+        return sb.append(moves.size() + 1).append(". place ").append(residentId).append(" in ").append(targetBedId).toString();
+    }
+}
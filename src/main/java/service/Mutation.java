@@ -0,0 +1,21 @@
+package service;
+
+/**
+ * Service mutations as persisted by a {@link StoreBackend}. Arguments are strings
+ * in the order each call site records them and include generated ids and
+ * timestamps, so applying them again is deterministic.
+ */
+public enum Mutation {
+    CREATE_STAFF,       // id, role, username, password
+    UPDATE_PASSWORD,    // staffId, password
+    ASSIGN_SHIFT,       // staffId, day, start, end
+    ADD_RESIDENT,       // id, name, gender, isolation
+    ALLOCATE,           // residentId, bedId
+    MOVE,               // fromBedId, toBedId
+    ADD_PRESCRIPTION,   // residentId, prescriptionId, doctorId, createdAt
+    ADD_ORDER,          // residentId, prescriptionId, medicine, dose, time
+    ADMINISTER,         // residentId, medicine, dose, at, nurseId
+    DISCHARGE,          // residentId
+    LEASE_IDS,          // prefix, highWaterMark
+    ADD_WARD            // name, malePreferred, bedPrefix, bedCount
+}
@@ -0,0 +1,20 @@
+package service;
+
+import jdk.jfr.*;
+
+/** Flight Recorder event for one instrumented service call; see {@link Metrics}. */
+@Name("carehome.Operation")
+@Label("Care Home Operation")
+@Category("Care Home")
+@StackTrace(false)
+class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Error")
+    @Description("Simple name of the exception thrown, or null on success")
+    String error;
+
+    @Label("Staff Id")
+    String staffId;
+}
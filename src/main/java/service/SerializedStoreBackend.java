@@ -0,0 +1,127 @@
+package service;
+
+import model.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.*;
+import java.util.List;
+
+/**
+ * Binary {@link SnapshotCodec} snapshot plus a write-ahead {@link Journal}.
+ * Commits only sync the journal; the snapshot is rewritten (and the journal
+ * emptied) once the journal passes COMPACT_AFTER entries, which also bounds
+ * replay on load.
+ */
+public class SerializedStoreBackend implements StoreBackend {
+    private static final int COMPACT_AFTER = 1000;
+
+    private final Path snapshotFile;
+    private final Journal journal;
+    private int lastReplayCount;
+
+    public SerializedStoreBackend(Path snapshotFile, Path journalFile) throws IOException {
+        this.snapshotFile = snapshotFile;
+        this.journal = new Journal(journalFile);
+    }
+
+    @Override
+    public DataStore load() throws Exception {
+        DataStore loaded = DataStore.load(snapshotFile.toString());
+        List<Journal.Entry> tail = journal.readAfter(loaded.journalSeq);
+        for (Journal.Entry e : tail) apply(loaded, e.op, e.args);
+        journal.advanceTo(loaded.journalSeq);
+        lastReplayCount = tail.size();
+        return loaded;
+    }
+
+    @Override
+    public void record(Mutation m, String... args) throws IOException {
+        journal.append(m, args);
+    }
+
+    @Override
+    public void recordAll(List<Change> changes) throws IOException {
+        journal.appendAll(changes);
+    }
+
+    @Override
+    public void discardBatch() throws IOException {
+        journal.discardLastBatch();
+    }
+
+    @Override
+    public void commit(DataStore store) throws IOException {
+        if (journal.size() >= COMPACT_AFTER) snapshot(store);
+        else journal.sync();
+    }
+
+    @Override
+    public void snapshot(DataStore store) throws IOException {
+        store.journalSeq = journal.lastSeq();
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        DataStore.save(store, tmp.toString());
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // The journal may only be emptied once the new snapshot's data and name are both on disk
+        FileUtil.forceDirectory(snapshotFile.toAbsolutePath().getParent());
+        journal.reset();
+    }
+
+    @Override
+    public int lastReplayCount() {
+        return lastReplayCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    // Re-applies a journaled mutation without role checks or auditing
+    static void apply(DataStore ds, Mutation m, String[] a) {
+        switch (m) {
+            case CREATE_STAFF -> {
+                Staff st = switch (Role.valueOf(a[1])) {
+                    case MANAGER -> new Manager(a[0], a[2], a[3]);
+                    case DOCTOR -> new Doctor(a[0], a[2], a[3]);
+                    case NURSE -> new Nurse(a[0], a[2], a[3]);
+                };
+                ds.staff.put(st.getId(), st);
+            }
+            case UPDATE_PASSWORD -> ds.staff.get(a[0]).setPassword(a[1]);
+            case ASSIGN_SHIFT -> ds.staff.get(a[0]).assignShift(
+                    new Shift(DayOfWeek.valueOf(a[1]), LocalTime.parse(a[2]), LocalTime.parse(a[3])));
+            case ADD_RESIDENT -> ds.residents.put(a[0],
+                    new Resident(a[0], a[1], Gender.valueOf(a[2]), Boolean.parseBoolean(a[3])));
+            case ALLOCATE -> findBed(ds, a[1]).assign(ds.residents.get(a[0]));
+            case MOVE -> {
+                Bed from = findBed(ds, a[0]);
+                Bed to = findBed(ds, a[1]);
+                to.assign(from.getResident());
+                from.vacate();
+            }
+            case ADD_PRESCRIPTION -> ds.residents.get(a[0])
+                    .addPrescription(new Prescription(a[1], a[2], LocalDateTime.parse(a[3])));
+            case ADD_ORDER -> ds.residents.get(a[0]).getPrescriptions().stream()
+                    .filter(p -> p.getId().equals(a[1])).findFirst().orElseThrow()
+                    .addOrder(new MedicationOrder(a[2], a[3], LocalTime.parse(a[4])));
+            case ADMINISTER -> ds.residents.get(a[0])
+                    .addAdministration(new AdministrationRecord(a[1], a[2], LocalDateTime.parse(a[3]), a[4]));
+            case DISCHARGE -> {
+                ds.residents.remove(a[0]);
+                for (Ward w : ds.wards)
+                    for (Bed b : w.getBeds())
+                        if (b.getResident() != null && b.getResident().getId().equals(a[0])) b.vacate();
+            }
+            case LEASE_IDS -> ds.idHighWater.merge(a[0], Long.parseLong(a[1]), Math::max);
+            case ADD_WARD -> ds.addWard(a[0], Boolean.parseBoolean(a[1]), a[2], Integer.parseInt(a[3]));
+        }
+    }
+
+    private static Bed findBed(DataStore ds, String bedId) {
+        for (Ward w : ds.wards)
+            for (Bed b : w.getBeds())
+                if (b.getId().equals(bedId)) return b;
+        throw new IllegalStateException("Journal refers to unknown bed " + bedId);
+    }
+}
@@ -3,11 +3,12 @@ package service;
 
 import model.Staff;
 
+/** The logged-in user of the calling thread; each thread (JavaFX, worker, test) has its own. */
 public class Session {
-    private static final Session INSTANCE = new Session();
+    private static final ThreadLocal<Session> CURRENT = ThreadLocal.withInitial(Session::new);
     private Staff currentUser;
     private Session(){}
-    public static Session get(){ return INSTANCE; }
+    public static Session get(){ return CURRENT.get(); }
     public void setCurrentUser(Staff s){ currentUser = s; }
     public Staff getCurrentUser(){ return currentUser; }
 }
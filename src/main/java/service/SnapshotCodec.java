@@ -0,0 +1,418 @@
+package service;
+
+import model.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The binary snapshot format of a {@link DataStore}. A header holds a magic
+ * number, the format version and the offsets of the index and of the drug
+ * catalog table, which is written last so it covers every code the residents
+ * use. Each resident's prescriptions and administrations follow the header,
+ * then the index: the journal position, id high-water marks, staff, residents
+ * (with where their records are) and wards.
+ * Numbers are varints, strings length-prefixed UTF-8, and administration times
+ * second deltas with nurses coded into a per-resident table. Written through a
+ * single buffer to a channel. Read back with positional reads: the index at once,
+ * each resident's records on first access, with catalog codes moved onto this
+ * process's as they are decoded.
+ */
+final class SnapshotCodec {
+    static final int MAGIC = 0x43485353; // "CHSS"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int BUFFER_BYTES = 64 << 10;
+
+    private SnapshotCodec() {
+    }
+
+    static void write(DataStore ds, Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Out out = new Out(ch);
+            out.buf.putInt(MAGIC).putInt(VERSION).putLong(0).putLong(0); // catalog and index offsets, filled in at the end
+
+            List<Resident> residents = new ArrayList<>(ds.residents.values());
+            long[] records = new long[residents.size() * 2];
+            for (int i = 0; i < residents.size(); i++) {
+                records[i * 2] = out.position();
+                writePrescriptions(out, residents.get(i).getPrescriptions());
+                records[i * 2 + 1] = out.position();
+                writeAdministrations(out, residents.get(i).getAdministrations());
+            }
+
+            long index = out.position();
+            out.varLong(ds.journalSeq);
+            List<Map.Entry<String, Long>> marks = new ArrayList<>(ds.idHighWater.entrySet());
+            out.varLong(marks.size());
+            for (Map.Entry<String, Long> e : marks) { out.string(e.getKey()); out.varLong(e.getValue()); }
+
+            List<Staff> staff = new ArrayList<>(ds.staff.values());
+            out.varLong(staff.size());
+            for (Staff s : staff) {
+                out.put(s.getRole().ordinal());
+                out.string(s.getId()); out.string(s.getUsername()); out.string(s.getPassword());
+                List<Shift> shifts = s.getShifts();
+                out.varLong(shifts.size());
+                for (Shift sh : shifts) { out.put(sh.getDay().ordinal()); out.time(sh.getStart()); out.time(sh.getEnd()); }
+            }
+
+            out.varLong(residents.size());
+            for (int i = 0; i < residents.size(); i++) {
+                Resident r = residents.get(i);
+                out.string(r.getId()); out.string(r.getName());
+                out.put(r.getGender().ordinal()); out.put(r.isIsolation() ? 1 : 0);
+                out.varLong(records[i * 2]); out.varLong(records[i * 2 + 1]);
+            }
+
+            List<Ward> wards = new ArrayList<>(ds.wards);
+            out.varLong(wards.size());
+            for (Ward w : wards) {
+                out.string(w.getId()); out.put(w.isMalePreferred() ? 1 : 0);
+                out.varLong(w.getBeds().size());
+                for (Bed b : w.getBeds()) {
+                    Resident r = b.getResident();
+                    out.string(b.getId()); out.string(r == null ? null : r.getId());
+                }
+            }
+
+            long catalog = out.position();
+            writeCatalog(out, DrugCatalog.MEDICINES);
+            writeCatalog(out, DrugCatalog.DOSES);
+            out.drain();
+            ch.write(ByteBuffer.allocate(16).putLong(0, catalog).putLong(8, index), 8);
+            ch.force(true); // on disk before anyone renames it over the last snapshot
+        }
+    }
+
+    private static void writePrescriptions(Out out, List<Prescription> prescriptions) throws IOException {
+        out.varLong(prescriptions.size());
+        for (Prescription p : prescriptions) {
+            out.string(p.getId()); out.string(p.getDoctorId()); out.dateTime(p.getCreatedAt());
+            List<MedicationOrder> orders = p.getOrders();
+            out.varLong(orders.size());
+            for (MedicationOrder o : orders) { out.varLong(o.getMedicineCode()); out.varLong(o.getDoseCode()); out.time(o.getTime()); }
+        }
+    }
+
+    private static void writeAdministrations(Out out, List<AdministrationRecord> given) throws IOException {
+        Map<String, Integer> nurses = new LinkedHashMap<>();
+        for (AdministrationRecord a : given) nurses.putIfAbsent(a.getNurseId(), nurses.size());
+        out.varLong(nurses.size());
+        for (String n : nurses.keySet()) out.string(n);
+        out.varLong(given.size());
+        long last = 0;
+        for (AdministrationRecord a : given) {
+            long sec = a.getAt().toEpochSecond(ZoneOffset.UTC); // the history keeps whole seconds
+            out.zigzag(sec - last);
+            last = sec;
+            out.varLong(a.getMedicineCode()); out.varLong(a.getDoseCode()); out.varLong(nurses.get(a.getNurseId()));
+        }
+    }
+
+    private static void writeCatalog(Out out, DrugCatalog catalog) throws IOException {
+        int n = catalog.size();
+        out.varLong(n);
+        for (int i = 0; i < n; i++) out.string(catalog.name(i));
+    }
+
+    /**
+     * Reads a snapshot. Only the header, the index and the catalog are read now,
+     * with positional reads; each resident's prescriptions and administrations
+     * are read from the file when first asked for. The file stays open (not
+     * mapped, so the next snapshot can still be renamed over it) until every
+     * block has been read.
+     */
+    static DataStore read(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        Blocks blocks = new Blocks(file, ch);
+        boolean read = false;
+        try {
+            ByteBuffer head = readFully(ch, 0, HEADER_BYTES);
+            if (head.getInt() != MAGIC) throw new IOException(file + " is not a store snapshot");
+            int version = head.getInt();
+            if (version != VERSION)
+                throw new IOException(file + " has snapshot format " + version + "; this build reads " + VERSION);
+            long catalog = head.getLong(), index = head.getLong(), size = ch.size();
+            if (index < HEADER_BYTES || catalog < index || size < catalog) throw new BufferUnderflowException();
+            In tail = new In(readFully(ch, catalog, size - catalog));
+            Codes codes = new Codes(readCatalog(tail, DrugCatalog.MEDICINES), readCatalog(tail, DrugCatalog.DOSES));
+            DataStore ds = readStore(new In(readFully(ch, index, catalog - index)), index, blocks, codes);
+            read = true;
+            return ds;
+        } catch (EOFException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                | ArithmeticException | DateTimeException e) {
+            throw new IOException(file + " is truncated or corrupt", e);
+        } finally {
+            if (read) blocks.done();
+            else ch.close();
+        }
+    }
+
+    // This process's catalog code for each code in the file
+    private static final class Codes {
+        final int[] med, dose;
+        Codes(int[] med, int[] dose) { this.med = med; this.dose = dose; }
+    }
+
+    private static DataStore readStore(In in, long index, Blocks blocks, Codes codes) throws IOException {
+        DataStore ds = new DataStore();
+        ds.journalSeq = in.varLong();
+        for (int i = in.varInt(); i > 0; i--) ds.idHighWater.put(in.string(), in.varLong());
+
+        for (int i = in.varInt(); i > 0; i--) {
+            Role role = Role.values()[in.get()];
+            String id = in.string(), username = in.string(), password = in.string();
+            Staff s = switch (role) {
+                case MANAGER -> new Manager(id, username, password);
+                case DOCTOR -> new Doctor(id, username, password);
+                case NURSE -> new Nurse(id, username, password);
+            };
+            for (int j = in.varInt(); j > 0; j--)
+                s.assignShift(new Shift(DayOfWeek.values()[in.get()], in.time(), in.time()));
+            ds.staff.put(id, s);
+        }
+
+        // Blocks were written in index order, so each one ends where the next begins
+        Resident[] residents = new Resident[in.varInt()];
+        long[] starts = new long[residents.length * 2 + 1];
+        for (int i = 0; i < residents.length; i++) {
+            residents[i] = new Resident(in.string(), in.string(), Gender.values()[in.get()], in.get() == 1);
+            starts[i * 2] = in.varLong();
+            starts[i * 2 + 1] = in.varLong();
+        }
+        starts[starts.length - 1] = index;
+        for (int i = 0; i < residents.length; i++) {
+            Resident r = residents[i];
+            r.setPrescriptionLoader(blocks.lazily(starts[i * 2], starts[i * 2 + 1], b -> readPrescriptions(b, codes)));
+            r.setAdministrationLoader(blocks.lazily(starts[i * 2 + 1], starts[i * 2 + 2], b -> readAdministrations(b, codes)));
+            ds.residents.put(r.getId(), r);
+        }
+
+        for (int i = in.varInt(); i > 0; i--) {
+            Ward w = new Ward(in.string(), in.get() == 1);
+            for (int j = in.varInt(); j > 0; j--) {
+                Bed b = new Bed(in.string());
+                String residentId = in.string();
+                if (residentId != null) {
+                    Resident r = ds.residents.get(residentId);
+                    if (r == null) throw new IOException("Bed " + b.getId() + " holds unknown resident " + residentId);
+                    b.assign(r);
+                }
+                w.addBed(b);
+            }
+            ds.wards.add(w);
+        }
+        return ds;
+    }
+
+    // The residents' record blocks still to be read; the file is closed once none are left
+    private static final class Blocks {
+        private final Path file;
+        private final FileChannel ch;
+        private final AtomicInteger pending = new AtomicInteger(1); // the index read itself, until it is done
+
+        Blocks(Path file, FileChannel ch) {
+            this.file = file;
+            this.ch = ch;
+        }
+
+        // Decodes {@code [from, to)} when first called; damage there surfaces then
+        <T> Supplier<T> lazily(long from, long to, Function<In, T> decode) {
+            if (to < from) throw new IllegalArgumentException("block ends before it starts");
+            pending.incrementAndGet();
+            return () -> {
+                try {
+                    return decode.apply(new In(readFully(ch, from, to - from)));
+                } catch (IOException | RuntimeException e) {
+                    throw new UncheckedIOException(new IOException(file + " is corrupt at offset " + from, e));
+                } finally {
+                    done();
+                }
+            };
+        }
+
+        void done() {
+            if (pending.decrementAndGet() == 0) {
+                try {
+                    ch.close();
+                } catch (IOException ignored) {
+                    // nothing was written through it
+                }
+            }
+        }
+    }
+
+    // A read interrupted part way closes the channel for every loader, so the interrupt is held back until it is done
+    private static ByteBuffer readFully(FileChannel ch, long position, long length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Math.toIntExact(length));
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, position + buf.position()) < 0) throw new EOFException();
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        return buf.flip();
+    }
+
+    private static List<Prescription> readPrescriptions(In in, Codes codes) {
+        List<Prescription> out = new ArrayList<>();
+        for (int i = in.varInt(); i > 0; i--) {
+            Prescription p = new Prescription(in.string(), in.string(), in.dateTime());
+            for (int j = in.varInt(); j > 0; j--)
+                p.addOrder(new MedicationOrder(codes.med[in.varInt()], codes.dose[in.varInt()], in.time()));
+            out.add(p);
+        }
+        return out;
+    }
+
+    private static List<AdministrationRecord> readAdministrations(In in, Codes codes) {
+        String[] nurses = new String[in.varInt()];
+        for (int i = 0; i < nurses.length; i++) nurses[i] = in.string();
+        List<AdministrationRecord> out = new ArrayList<>();
+        long sec = 0;
+        for (int i = in.varInt(); i > 0; i--) {
+            sec += in.zigzag();
+            LocalDateTime at = LocalDateTime.ofEpochSecond(sec, 0, ZoneOffset.UTC);
+            out.add(new AdministrationRecord(codes.med[in.varInt()], codes.dose[in.varInt()], at, nurses[in.varInt()]));
+        }
+        return out;
+    }
+
+    // File code -> this process's code
+    private static int[] readCatalog(In in, DrugCatalog catalog) {
+        int[] map = new int[in.varInt()];
+        for (int i = 0; i < map.length; i++) map[i] = catalog.code(in.string());
+        return map;
+    }
+
+    private static final class Out {
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final FileChannel ch;
+        private long flushed;
+
+        Out(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        long position() {
+            return flushed + buf.position();
+        }
+
+        void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) flushed += ch.write(buf);
+            buf.clear();
+        }
+
+        private void room(int n) throws IOException {
+            if (buf.remaining() < n) drain();
+        }
+
+        void put(int b) throws IOException {
+            room(1);
+            buf.put((byte) b);
+        }
+
+        void varLong(long v) throws IOException {
+            room(10);
+            while ((v & ~0x7FL) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        void zigzag(long v) throws IOException {
+            varLong((v << 1) ^ (v >> 63));
+        }
+
+        // Length + 1, so 0 stands for null
+        void string(String s) throws IOException {
+            if (s == null) { varLong(0); return; }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            varLong(b.length + 1L);
+            if (b.length > buf.capacity()) {
+                drain();
+                ByteBuffer big = ByteBuffer.wrap(b);
+                while (big.hasRemaining()) flushed += ch.write(big);
+            } else {
+                room(b.length);
+                buf.put(b);
+            }
+        }
+
+        void time(LocalTime t) throws IOException {
+            varLong(t.toSecondOfDay());
+            varLong(t.getNano());
+        }
+
+        void dateTime(LocalDateTime t) throws IOException {
+            zigzag(t.toEpochSecond(ZoneOffset.UTC));
+            varLong(t.getNano());
+        }
+    }
+
+    private static final class In {
+        private final ByteBuffer buf;
+
+        In(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        int get() {
+            return buf.get() & 0xFF;
+        }
+
+        long varLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IllegalArgumentException("varint too long");
+        }
+
+        int varInt() {
+            return Math.toIntExact(varLong());
+        }
+
+        long zigzag() {
+            long v = varLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String string() {
+            int n = varInt();
+            if (n == 0) return null;
+            byte[] b = new byte[n - 1];
+            buf.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        LocalTime time() {
+            return LocalTime.ofSecondOfDay(varLong()).withNano(varInt());
+        }
+
+        LocalDateTime dateTime() {
+            long sec = zigzag();
+            return LocalDateTime.ofEpochSecond(sec, varInt(), ZoneOffset.UTC);
+        }
+    }
+}
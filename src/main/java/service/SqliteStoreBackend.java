@@ -0,0 +1,334 @@
+package service;
+
+import model.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.*;
+import java.util.*;
+
+/**
+ * Keeps the store in SQLite tables. Each recorded mutation becomes a few
+ * prepared-statement updates inside the open transaction and {@link #commit}
+ * commits it; full snapshots use batched inserts. Administration history is not
+ * read on load but on first access to a resident's administrations.
+ */
+public class SqliteStoreBackend implements StoreBackend {
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS staff (id TEXT PRIMARY KEY, username TEXT NOT NULL, password TEXT, role TEXT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS staff_username ON staff(username)",
+            "CREATE TABLE IF NOT EXISTS shifts (id INTEGER PRIMARY KEY AUTOINCREMENT, staff_id TEXT NOT NULL, day TEXT NOT NULL, start_time TEXT NOT NULL, end_time TEXT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS shifts_staff ON shifts(staff_id)",
+            "CREATE TABLE IF NOT EXISTS wards (id TEXT PRIMARY KEY, pos INTEGER NOT NULL, male_preferred INTEGER NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS beds (id TEXT PRIMARY KEY, ward_id TEXT NOT NULL, pos INTEGER NOT NULL, resident_id TEXT)",
+            "CREATE INDEX IF NOT EXISTS beds_ward ON beds(ward_id, pos)",
+            "CREATE INDEX IF NOT EXISTS beds_resident ON beds(resident_id)",
+            "CREATE TABLE IF NOT EXISTS residents (id TEXT PRIMARY KEY, name TEXT, gender TEXT NOT NULL, isolation INTEGER NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS prescriptions (resident_id TEXT NOT NULL, id TEXT NOT NULL, doctor_id TEXT, created_at TEXT, PRIMARY KEY (resident_id, id))",
+            "CREATE TABLE IF NOT EXISTS medication_orders (id INTEGER PRIMARY KEY AUTOINCREMENT, resident_id TEXT NOT NULL, prescription_id TEXT NOT NULL, medicine TEXT, dose TEXT, time TEXT)",
+            "CREATE INDEX IF NOT EXISTS orders_prescription ON medication_orders(resident_id, prescription_id)",
+            "CREATE TABLE IF NOT EXISTS administrations (id INTEGER PRIMARY KEY AUTOINCREMENT, resident_id TEXT NOT NULL, medicine TEXT, dose TEXT, at TEXT, nurse_id TEXT)",
+            "CREATE INDEX IF NOT EXISTS administrations_resident ON administrations(resident_id, at)",
+            "CREATE TABLE IF NOT EXISTS id_counters (prefix TEXT PRIMARY KEY, high_water INTEGER NOT NULL)"
+    };
+    private static final String[] TABLES = {
+            "staff", "shifts", "wards", "beds", "residents", "prescriptions", "medication_orders", "administrations", "id_counters"
+    };
+
+    private final Connection conn;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    public SqliteStoreBackend(Path dbFile) throws IOException {
+        try {
+            conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+            try (Statement st = conn.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=NORMAL");
+                for (String ddl : SCHEMA) st.execute(ddl);
+            }
+            conn.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new IOException("Cannot open " + dbFile, e);
+        }
+    }
+
+    private PreparedStatement ps(String sql) throws SQLException {
+        PreparedStatement p = statements.get(sql);
+        if (p == null) {
+            p = conn.prepareStatement(sql);
+            statements.put(sql, p);
+        }
+        return p;
+    }
+
+    private int exec(String sql, Object... params) throws SQLException {
+        PreparedStatement p = ps(sql);
+        for (int i = 0; i < params.length; i++) p.setObject(i + 1, params[i]);
+        return p.executeUpdate();
+    }
+
+    @Override
+    public synchronized DataStore load() throws Exception {
+        DataStore ds = new DataStore();
+        try (Statement st = conn.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT id, username, password, role FROM staff ORDER BY rowid")) {
+                while (rs.next()) {
+                    String id = rs.getString(1), u = rs.getString(2), p = rs.getString(3);
+                    Staff s = switch (Role.valueOf(rs.getString(4))) {
+                        case MANAGER -> new Manager(id, u, p);
+                        case DOCTOR -> new Doctor(id, u, p);
+                        case NURSE -> new Nurse(id, u, p);
+                    };
+                    ds.staff.put(id, s);
+                }
+            }
+            try (ResultSet rs = st.executeQuery("SELECT staff_id, day, start_time, end_time FROM shifts ORDER BY id")) {
+                while (rs.next()) {
+                    Staff s = ds.staff.get(rs.getString(1));
+                    if (s != null) s.assignShift(new Shift(DayOfWeek.valueOf(rs.getString(2)),
+                            LocalTime.parse(rs.getString(3)), LocalTime.parse(rs.getString(4))));
+                }
+            }
+            try (ResultSet rs = st.executeQuery("SELECT id, name, gender, isolation FROM residents")) {
+                while (rs.next()) {
+                    Resident r = new Resident(rs.getString(1), rs.getString(2), Gender.valueOf(rs.getString(3)), rs.getInt(4) != 0);
+                    r.setAdministrationLoader(() -> loadAdministrations(r.getId()));
+                    ds.residents.put(r.getId(), r);
+                }
+            }
+            Map<String, Prescription> prescriptions = new HashMap<>();
+            try (ResultSet rs = st.executeQuery("SELECT resident_id, id, doctor_id, created_at FROM prescriptions ORDER BY rowid")) {
+                while (rs.next()) {
+                    Resident r = ds.residents.get(rs.getString(1));
+                    if (r == null) continue;
+                    Prescription p = new Prescription(rs.getString(2), rs.getString(3), LocalDateTime.parse(rs.getString(4)));
+                    r.addPrescription(p);
+                    prescriptions.put(r.getId() + "/" + p.getId(), p);
+                }
+            }
+            try (ResultSet rs = st.executeQuery("SELECT resident_id, prescription_id, medicine, dose, time FROM medication_orders ORDER BY id")) {
+                while (rs.next()) {
+                    Prescription p = prescriptions.get(rs.getString(1) + "/" + rs.getString(2));
+                    if (p != null) p.addOrder(new MedicationOrder(rs.getString(3), rs.getString(4), LocalTime.parse(rs.getString(5))));
+                }
+            }
+            try (ResultSet rs = st.executeQuery("SELECT prefix, high_water FROM id_counters")) {
+                while (rs.next()) ds.idHighWater.put(rs.getString(1), rs.getLong(2));
+            }
+            Map<String, Ward> wards = new HashMap<>();
+            try (ResultSet rs = st.executeQuery("SELECT id, male_preferred FROM wards ORDER BY pos")) {
+                while (rs.next()) {
+                    Ward w = new Ward(rs.getString(1), rs.getInt(2) != 0);
+                    ds.wards.add(w);
+                    wards.put(w.getId(), w);
+                }
+            }
+            try (ResultSet rs = st.executeQuery("SELECT id, ward_id, resident_id FROM beds ORDER BY ward_id, pos")) {
+                while (rs.next()) {
+                    Bed b = new Bed(rs.getString(1));
+                    wards.get(rs.getString(2)).addBed(b);
+                    String rid = rs.getString(3);
+                    if (rid != null) b.assign(ds.residents.get(rid));
+                }
+            }
+        }
+        return ds;
+    }
+
+    private synchronized List<AdministrationRecord> loadAdministrations(String residentId) {
+        List<AdministrationRecord> list = new ArrayList<>();
+        try {
+            PreparedStatement p = ps("SELECT medicine, dose, at, nurse_id FROM administrations WHERE resident_id = ? ORDER BY id");
+            p.setString(1, residentId);
+            try (ResultSet rs = p.executeQuery()) {
+                while (rs.next()) list.add(new AdministrationRecord(rs.getString(1), rs.getString(2),
+                        LocalDateTime.parse(rs.getString(3)), rs.getString(4)));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot load administrations for " + residentId, e);
+        }
+        return list;
+    }
+
+    @Override
+    public synchronized void record(Mutation m, String... a) throws IOException {
+        try {
+            switch (m) {
+                case CREATE_STAFF -> exec("INSERT OR REPLACE INTO staff (id, role, username, password) VALUES (?, ?, ?, ?)", (Object[]) a);
+                case UPDATE_PASSWORD -> exec("UPDATE staff SET password = ? WHERE id = ?", a[1], a[0]);
+                case ASSIGN_SHIFT -> exec("INSERT INTO shifts (staff_id, day, start_time, end_time) VALUES (?, ?, ?, ?)", (Object[]) a);
+                case ADD_RESIDENT -> exec("INSERT OR REPLACE INTO residents (id, name, gender, isolation) VALUES (?, ?, ?, ?)",
+                        a[0], a[1], a[2], Boolean.parseBoolean(a[3]) ? 1 : 0);
+                case ALLOCATE -> exec("UPDATE beds SET resident_id = ? WHERE id = ?", a[0], a[1]);
+                case MOVE -> {
+                    exec("UPDATE beds SET resident_id = (SELECT resident_id FROM beds WHERE id = ?) WHERE id = ?", a[0], a[1]);
+                    exec("UPDATE beds SET resident_id = NULL WHERE id = ?", a[0]);
+                }
+                case ADD_PRESCRIPTION -> exec("INSERT OR REPLACE INTO prescriptions (resident_id, id, doctor_id, created_at) VALUES (?, ?, ?, ?)", (Object[]) a);
+                case ADD_ORDER -> exec("INSERT INTO medication_orders (resident_id, prescription_id, medicine, dose, time) VALUES (?, ?, ?, ?, ?)", (Object[]) a);
+                case ADMINISTER -> exec("INSERT INTO administrations (resident_id, medicine, dose, at, nurse_id) VALUES (?, ?, ?, ?, ?)", (Object[]) a);
+                case DISCHARGE -> {
+                    exec("UPDATE beds SET resident_id = NULL WHERE resident_id = ?", a[0]);
+                    exec("DELETE FROM administrations WHERE resident_id = ?", a[0]);
+                    exec("DELETE FROM medication_orders WHERE resident_id = ?", a[0]);
+                    exec("DELETE FROM prescriptions WHERE resident_id = ?", a[0]);
+                    exec("DELETE FROM residents WHERE id = ?", a[0]);
+                }
+                case LEASE_IDS -> exec("INSERT INTO id_counters (prefix, high_water) VALUES (?, ?) "
+                        + "ON CONFLICT(prefix) DO UPDATE SET high_water = MAX(high_water, excluded.high_water)", a[0], Long.parseLong(a[1]));
+                case ADD_WARD -> {
+                    exec("INSERT INTO wards (id, pos, male_preferred) VALUES (?, (SELECT COUNT(*) FROM wards), ?)",
+                            a[0], Boolean.parseBoolean(a[1]) ? 1 : 0);
+                    for (int i = 1; i <= Integer.parseInt(a[3]); i++)
+                        exec("INSERT INTO beds (id, ward_id, pos, resident_id) VALUES (?, ?, ?, NULL)", a[2] + "-B" + i, a[0], i - 1);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot record " + m, e);
+        }
+    }
+
+    @Override
+    public synchronized void recordAll(List<Change> changes) throws IOException {
+        Savepoint before;
+        try {
+            before = conn.setSavepoint();
+        } catch (SQLException e) {
+            throw new IOException("Cannot start batch", e);
+        }
+        try {
+            for (Change c : changes) record(c.op, c.args);
+            conn.releaseSavepoint(before);
+        } catch (IOException | SQLException e) {
+            try { conn.rollback(before); } catch (SQLException ignored) {}
+            throw e instanceof IOException io ? io : new IOException("Cannot record batch", e);
+        }
+    }
+
+    // The batch and whatever else is uncommitted; the service rewrites the store next
+    @Override
+    public synchronized void discardBatch() throws IOException {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            throw new IOException("Cannot discard batch", e);
+        }
+    }
+
+    @Override
+    public synchronized void commit(DataStore store) throws IOException {
+        try {
+            conn.commit();
+        } catch (SQLException e) {
+            throw new IOException("Commit failed", e);
+        }
+    }
+
+    @Override
+    public void snapshot(DataStore store) throws IOException {
+        // Records are read first, outside this monitor: a resident's lazy history
+        // loader takes it while the resident is locked, so holding it here while
+        // locking residents could deadlock. This also pulls in lazily loaded history
+        // before the tables it lives in are cleared.
+        Map<Resident, List<Prescription>> prescriptions = new HashMap<>();
+        Map<Resident, List<AdministrationRecord>> administrations = new HashMap<>();
+        for (Resident r : store.residents.values()) {
+            prescriptions.put(r, r.getPrescriptions());
+            administrations.put(r, r.getAdministrations());
+        }
+        synchronized (this) {
+            write(store, prescriptions, administrations);
+        }
+    }
+
+    private void write(DataStore store, Map<Resident, List<Prescription>> prescriptions,
+                       Map<Resident, List<AdministrationRecord>> administrations) throws IOException {
+        try {
+            try (Statement st = conn.createStatement()) {
+                for (String t : TABLES) st.executeUpdate("DELETE FROM " + t);
+            }
+            try (PreparedStatement staff = conn.prepareStatement("INSERT INTO staff (id, username, password, role) VALUES (?, ?, ?, ?)");
+                 PreparedStatement shifts = conn.prepareStatement("INSERT INTO shifts (staff_id, day, start_time, end_time) VALUES (?, ?, ?, ?)")) {
+                for (Staff s : store.staff.values()) {
+                    staff.setString(1, s.getId()); staff.setString(2, s.getUsername());
+                    staff.setString(3, s.getPassword()); staff.setString(4, s.getRole().name());
+                    staff.addBatch();
+                    for (Shift sh : s.getShifts()) {
+                        shifts.setString(1, s.getId()); shifts.setString(2, sh.getDay().name());
+                        shifts.setString(3, sh.getStart().toString()); shifts.setString(4, sh.getEnd().toString());
+                        shifts.addBatch();
+                    }
+                }
+                staff.executeBatch();
+                shifts.executeBatch();
+            }
+            try (PreparedStatement wards = conn.prepareStatement("INSERT INTO wards (id, pos, male_preferred) VALUES (?, ?, ?)");
+                 PreparedStatement beds = conn.prepareStatement("INSERT INTO beds (id, ward_id, pos, resident_id) VALUES (?, ?, ?, ?)")) {
+                int wardPos = 0;
+                for (Ward w : store.wards) {
+                    wards.setString(1, w.getId()); wards.setInt(2, wardPos++); wards.setInt(3, w.isMalePreferred() ? 1 : 0);
+                    wards.addBatch();
+                    int bedPos = 0;
+                    for (Bed b : w.getBeds()) {
+                        beds.setString(1, b.getId()); beds.setString(2, w.getId()); beds.setInt(3, bedPos++);
+                        beds.setString(4, b.isEmpty() ? null : b.getResident().getId());
+                        beds.addBatch();
+                    }
+                }
+                wards.executeBatch();
+                beds.executeBatch();
+            }
+            try (PreparedStatement res = conn.prepareStatement("INSERT INTO residents (id, name, gender, isolation) VALUES (?, ?, ?, ?)");
+                 PreparedStatement rx = conn.prepareStatement("INSERT INTO prescriptions (resident_id, id, doctor_id, created_at) VALUES (?, ?, ?, ?)");
+                 PreparedStatement orders = conn.prepareStatement("INSERT INTO medication_orders (resident_id, prescription_id, medicine, dose, time) VALUES (?, ?, ?, ?, ?)");
+                 PreparedStatement admin = conn.prepareStatement("INSERT INTO administrations (resident_id, medicine, dose, at, nurse_id) VALUES (?, ?, ?, ?, ?)")) {
+                for (Resident r : prescriptions.keySet()) {
+                    res.setString(1, r.getId()); res.setString(2, r.getName());
+                    res.setString(3, r.getGender().name()); res.setInt(4, r.isIsolation() ? 1 : 0);
+                    res.addBatch();
+                    for (Prescription p : prescriptions.get(r)) {
+                        rx.setString(1, r.getId()); rx.setString(2, p.getId());
+                        rx.setString(3, p.getDoctorId()); rx.setString(4, p.getCreatedAt().toString());
+                        rx.addBatch();
+                        for (MedicationOrder o : p.getOrders()) {
+                            orders.setString(1, r.getId()); orders.setString(2, p.getId());
+                            orders.setString(3, o.getMedicine()); orders.setString(4, o.getDose()); orders.setString(5, o.getTime().toString());
+                            orders.addBatch();
+                        }
+                    }
+                    for (AdministrationRecord a : administrations.get(r)) {
+                        admin.setString(1, r.getId()); admin.setString(2, a.getMedicine()); admin.setString(3, a.getDose());
+                        admin.setString(4, a.getAt().toString()); admin.setString(5, a.getNurseId());
+                        admin.addBatch();
+                    }
+                }
+                res.executeBatch();
+                rx.executeBatch();
+                orders.executeBatch();
+                admin.executeBatch();
+            }
+            try (PreparedStatement ids = conn.prepareStatement("INSERT INTO id_counters (prefix, high_water) VALUES (?, ?)")) {
+                for (Map.Entry<String, Long> e : store.idHighWater.entrySet()) {
+                    ids.setString(1, e.getKey()); ids.setLong(2, e.getValue());
+                    ids.addBatch();
+                }
+                ids.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            throw new IOException("Snapshot failed", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            for (PreparedStatement p : statements.values()) p.close();
+            conn.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
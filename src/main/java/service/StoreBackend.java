@@ -0,0 +1,62 @@
+package service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Where a {@link DataStore} is persisted. The service reports each mutation as it
+ * happens; {@link #commit} makes them durable and {@link #snapshot} rewrites the
+ * whole store (first save, or after clearing).
+ */
+public interface StoreBackend extends Closeable {
+
+    DataStore load() throws Exception;
+
+    void record(Mutation m, String... args) throws IOException;
+
+    /**
+     * Records mutations that only make sense together, so a later load applies
+     * all of them or none. When this or {@link #record} throws, what the backend
+     * holds is unknown until the next {@link #snapshot}.
+     */
+    void recordAll(List<Change> changes) throws IOException;
+
+    /**
+     * Takes back the last {@link #recordAll} when the commit after it failed, so
+     * a restart does not bring the batch back. Nothing may have been recorded
+     * since; other uncommitted mutations may be lost with it, and the caller
+     * snapshots next.
+     */
+    void discardBatch() throws IOException;
+
+    void commit(DataStore store) throws IOException;
+
+    void snapshot(DataStore store) throws IOException;
+
+    /** A mutation and its arguments, as {@link #record} takes them. */
+    final class Change {
+        final Mutation op; final String[] args;
+        Change(Mutation op, String... args) { this.op = op; this.args = args; }
+    }
+
+    /** Journal entries replayed by the last {@link #load}, for backends that replay. */
+    default int lastReplayCount() {
+        return 0;
+    }
+
+    /** Backend selected by the {@code carehome.store} system property: {@code file} (default) or {@code sqlite}. */
+    static StoreBackend open() throws IOException {
+        return open("carehome");
+    }
+
+    /** As {@link #open()}, with the files named {@code name.ser}, {@code name.journal} or {@code name.db} in the group's directory. */
+    static StoreBackend open(String name) throws IOException {
+        Path dir = CareHomeGroup.home();
+        if ("sqlite".equalsIgnoreCase(System.getProperty("carehome.store", "file"))) {
+            return new SqliteStoreBackend(dir.resolve(name + ".db"));
+        }
+        return new SerializedStoreBackend(dir.resolve(name + ".ser"), dir.resolve(name + ".journal"));
+    }
+}
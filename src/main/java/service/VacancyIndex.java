@@ -0,0 +1,126 @@
+package service;
+
+import model.*;
+import model.Room.Occupancy;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Rooms with at least one vacant bed, bucketed by (room size, occupancy).
+ * Isolation-eligible rooms are the EMPTY buckets of sizes 1 and 2.
+ * Buckets are ordered by room ordinal so the first match is the same room
+ * a ward-by-ward, room-by-room scan would have found. Finders only propose a
+ * bed; callers confirm it under the room's monitor before assigning.
+ */
+class VacancyIndex implements Room.Listener {
+    private static final Comparator<Room> BY_ORDINAL = Comparator.comparingInt(Room::getOrdinal);
+
+    private final List<Room> rooms = new CopyOnWriteArrayList<>();
+    private final Map<String, List<Room>> roomsByWard = new ConcurrentHashMap<>();
+    private final Map<Integer, EnumMap<Occupancy, NavigableSet<Room>>> vacant = new HashMap<>();
+    private final Map<Room, NavigableSet<Room>> bucketOf = new IdentityHashMap<>();
+
+    VacancyIndex(List<Ward> wards, int[] layout) {
+        for (Ward w : wards) addWard(w, layout);
+    }
+
+    /** Splits the ward's beds into rooms of the layout's sizes, numbered after the existing rooms. */
+    synchronized void addWard(Ward w, int[] layout) {
+        List<Room> wardRooms = new ArrayList<>();
+        int idx = 0;
+        for (int size : layout) {
+            List<Bed> beds = new ArrayList<>();
+            for (int i = 0; i < size && idx < w.getBeds().size(); i++) beds.add(w.getBeds().get(idx++));
+            Room room = new Room(w.getId(), rooms.size(), beds);
+            room.addListener(this);
+            wardRooms.add(room);
+            rooms.add(room);
+            rebucket(room);
+        }
+        roomsByWard.put(w.getId(), wardRooms);
+    }
+
+    List<Room> rooms() {
+        return Collections.unmodifiableList(rooms);
+    }
+
+    List<Room> roomsFor(Ward w) {
+        return roomsByWard.getOrDefault(w.getId(), List.of());
+    }
+
+    @Override
+    public synchronized void bedChanged(Room room, Bed bed, Resident previous, Resident current) {
+        rebucket(room);
+    }
+
+    private void rebucket(Room room) {
+        NavigableSet<Room> old = bucketOf.remove(room);
+        if (old != null) old.remove(room);
+        if (!room.hasVacancy()) return;
+        NavigableSet<Room> bucket = vacant
+                .computeIfAbsent(room.size(), k -> new EnumMap<>(Occupancy.class))
+                .computeIfAbsent(room.occupancy(), k -> new TreeSet<>(BY_ORDINAL));
+        bucket.add(room);
+        bucketOf.put(room, bucket);
+    }
+
+    /** First vacant room of the given size whose occupancy is one of {@code states}. */
+    synchronized Room firstRoom(int size, Occupancy... states) {
+        EnumMap<Occupancy, NavigableSet<Room>> bySize = vacant.get(size);
+        if (bySize == null) return null;
+        Room best = null;
+        for (Occupancy o : states) {
+            NavigableSet<Room> bucket = bySize.get(o);
+            if (bucket == null || bucket.isEmpty()) continue;
+            Room first = bucket.first();
+            if (best == null || first.getOrdinal() < best.getOrdinal()) best = first;
+        }
+        return best;
+    }
+
+    synchronized Bed findSameGenderOrEmpty(Gender gender, int... sizes) {
+        for (int size : sizes) {
+            Room room = firstRoom(size, Occupancy.EMPTY, Occupancy.of(gender));
+            if (room != null) return room.firstVacantBed();
+        }
+        return null;
+    }
+
+    synchronized Bed findAny(int... sizes) {
+        for (int size : sizes) {
+            Room room = firstRoom(size, Occupancy.values());
+            if (room != null) return room.firstVacantBed();
+        }
+        return null;
+    }
+
+    /** Empty single first, then an empty double. */
+    synchronized Bed findIsolation() {
+        for (int size : new int[]{1, 2}) {
+            Room room = firstRoom(size, Occupancy.EMPTY);
+            if (room != null) return room.getBeds().get(0);
+        }
+        return null;
+    }
+
+    synchronized int isolationRooms() {
+        int n = 0;
+        for (int size : new int[]{1, 2}) {
+            EnumMap<Occupancy, NavigableSet<Room>> bySize = vacant.get(size);
+            if (bySize != null) n += bySize.getOrDefault(Occupancy.EMPTY, Collections.emptyNavigableSet()).size();
+        }
+        return n;
+    }
+
+    synchronized List<Room> vacantRoomsForGender(Gender gender) {
+        List<Room> result = new ArrayList<>();
+        for (EnumMap<Occupancy, NavigableSet<Room>> bySize : vacant.values()) {
+            result.addAll(bySize.getOrDefault(Occupancy.EMPTY, Collections.emptyNavigableSet()));
+            result.addAll(bySize.getOrDefault(Occupancy.of(gender), Collections.emptyNavigableSet()));
+        }
+        result.sort(BY_ORDINAL);
+        return result;
+    }
+}
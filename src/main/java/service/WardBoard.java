@@ -0,0 +1,156 @@
+package service;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.*;
+import javafx.scene.paint.Color;
+import model.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The ward display. Wards sit in a virtualized list, so only those on screen
+ * have a pane. Bed changes arrive from the service on any thread; they are
+ * coalesced and repaint just the affected buttons on the FX thread.
+ */
+class WardBoard implements CareHomeService.BedObserver {
+    static final Background VACANT = fill(Color.WHITE);
+    static final Background MALE = fill(Color.CORNFLOWERBLUE.deriveColor(0, 1, 1, 0.65));
+    static final Background FEMALE = fill(Color.SALMON.deriveColor(0, 1, 1, 0.65));
+
+    private final CareHomeService svc;
+    private final ListView<Ward> list = new ListView<>();
+    // Buttons of the wards on screen, by bed id; FX thread only
+    private final Map<String, Button> shown = new HashMap<>();
+    private final Set<Bed> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+
+    WardBoard(CareHomeService svc) {
+        this.svc = svc;
+        list.setOrientation(Orientation.HORIZONTAL);
+        list.setFocusTraversable(false);
+        list.setCellFactory(v -> new WardCell());
+        list.getItems().setAll(svc.getWards());
+        svc.addBedObserver(this);
+    }
+
+    Node node() {
+        return list;
+    }
+
+    void dispose() {
+        svc.removeBedObserver(this);
+    }
+
+    @Override
+    public void bedChanged(Bed bed) {
+        dirty.add(bed);
+        if (drainQueued.compareAndSet(false, true)) Platform.runLater(this::drain);
+    }
+
+    @Override
+    public void layoutChanged() {
+        Platform.runLater(() -> list.getItems().setAll(svc.getWards()));
+    }
+
+    private void drain() {
+        drainQueued.set(false);
+        for (Iterator<Bed> it = dirty.iterator(); it.hasNext(); ) {
+            Bed bed = it.next();
+            it.remove();
+            Button b = shown.get(bed.getId());
+            if (b != null && b.getUserData() == bed) paint(bed, b);
+        }
+    }
+
+    private static Background fill(Color c) {
+        return new Background(new BackgroundFill(c, new CornerRadii(4), Insets.EMPTY));
+    }
+
+    private static void paint(Bed bed, Button b) {
+        Resident r = bed.getResident();
+        if (r == null) {
+            b.setText(bed.getId());
+            b.setBackground(VACANT);
+        } else {
+            b.setText(bed.getId() + "\n" + r.getId());
+            b.setBackground(r.getGender() == Gender.MALE ? MALE : FEMALE);
+        }
+    }
+
+    private final class WardCell extends ListCell<Ward> {
+        private Ward ward;
+        private final Map<String, Button> mine = new HashMap<>();
+
+        WardCell() {
+            setStyle("-fx-background-color: transparent; -fx-padding: 0 10 0 0;");
+        }
+
+        @Override
+        protected void updateItem(Ward w, boolean empty) {
+            super.updateItem(w, empty);
+            if (empty) w = null;
+            if (w == ward) return;
+            mine.forEach((id, b) -> shown.remove(id, b));
+            mine.clear();
+            ward = w;
+            setGraphic(w == null ? null : wardPane(w));
+        }
+
+        private Node wardPane(Ward w) {
+            VBox wardBox = new VBox(8);
+            wardBox.setStyle("-fx-border-color: #8aa; -fx-border-radius: 4; -fx-padding: 8;");
+            Label title = new Label(w.getId());
+            title.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
+            GridPane grid = new GridPane();
+            grid.setHgap(10);
+            grid.setVgap(10);
+
+            List<Room> rooms = svc.getRooms(w);
+            for (int r = 0; r < rooms.size(); r++) {
+                VBox room = new VBox(5);
+                room.setAlignment(Pos.CENTER);
+                room.setPadding(new Insets(6));
+                room.setStyle("-fx-border-color: #ccd; -fx-background-color: #f9fbff;");
+                GridPane roomBeds = new GridPane();
+                roomBeds.setHgap(5);
+                roomBeds.setVgap(5);
+                List<Bed> beds = rooms.get(r).getBeds();
+                for (int i = 0; i < beds.size(); i++) roomBeds.add(bedButton(beds.get(i)), i % 2, i / 2);
+                room.getChildren().add(roomBeds);
+                grid.add(room, r % 2, r / 2);
+            }
+            wardBox.getChildren().addAll(title, grid);
+            return wardBox;
+        }
+
+        private Button bedButton(Bed bed) {
+            Button b = new Button();
+            b.setMinSize(70, 50);
+            b.setMaxSize(70, 50);
+            b.setUserData(bed);
+            paint(bed, b);
+            b.setOnAction(e -> {
+                Resident r = bed.getResident();
+                if (r == null) { UIHelpers.info("Bed " + bed.getId(), "Vacant"); }
+                else {
+                    String details = "ID: " + r.getId() + "\nName: " + r.getName() + "\nGender: " + r.getGender() +
+                            "\nPrescriptions: " + r.getPrescriptions().size() + "\nAdministrations: " + r.getAdministrations().size();
+                    UIHelpers.info("Bed " + bed.getId(), details);
+                }
+            });
+            mine.put(bed.getId(), b);
+            shown.put(bed.getId(), b);
+            return b;
+        }
+    }
+}
@@ -2,19 +2,60 @@ package assignment2.carehome;
 
 import exception.*;
 import model.*;
+import service.Admission;
+import service.ArchiveReader;
+import service.ArchiveUtil;
+import service.AuditLog;
+import service.AuditSearch;
+import service.Autosave;
+import service.IdUtil;
+import service.MovePlan;
+import service.Metrics;
+import service.MetricsMXBean;
+import service.ComplianceReport;
+import service.DueDose;
+import service.CareHomeGroup;
 import service.CareHomeService;
+import service.DataStore;
+import service.Mutation;
+import service.SerializedStoreBackend;
+import service.SqliteStoreBackend;
+import service.StoreBackend;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.nio.file.*;
 import java.time.*;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class CareHomeServiceTest {
 
+    // The store, archive and audit log of every test live here, not in the working directory
+    @TempDir
+    static Path home;
+
     private CareHomeService svc;
 
+    @BeforeAll
+    static void isolate() throws Exception {
+        CareHomeGroup.configure(home);
+    }
+
     @BeforeEach
     void setup() {
         svc = CareHomeService.get();
@@ -79,6 +120,18 @@ public class CareHomeServiceTest {
         assertEquals(Role.MANAGER, m.getRole());
     }
 
+    @Test
+    void testSessionSurvivesClearAndReload() throws Exception {
+        svc.login("manager", "password");
+        svc.clearAllData();
+        assertEquals("Dana", svc.addResident("Dana", Gender.FEMALE, false).getName());
+
+        svc.save();
+        svc.load();
+        svc.addResident("Eli", Gender.MALE, false);
+        assertEquals(2, svc.getResidents().size());
+    }
+
     @Test
     void testShiftComplianceForNurses() throws Exception {
         svc.login("manager", "password");
@@ -114,4 +167,774 @@ public class CareHomeServiceTest {
         svc.discharge(r.getId());
         assertFalse(svc.getResidents().contains(r));
     }
+
+    @Test
+    void testAllocationTracksVacanciesAcrossDischarge() throws Exception {
+        svc.login("manager", "password");
+
+        Resident a = svc.addResident("Iso A", Gender.MALE, true);
+        svc.allocateResidentToBed(a.getId());
+        Resident b = svc.addResident("Iso B", Gender.FEMALE, true);
+        svc.allocateResidentToBed(b.getId());
+        assertEquals("W1-B1", bedOf(a.getId()).getId());
+        assertEquals("W2-B1", bedOf(b.getId()).getId());
+
+        svc.discharge(a.getId());
+        Resident c = svc.addResident("Iso C", Gender.MALE, true);
+        svc.allocateResidentToBed(c.getId());
+        assertEquals("W1-B1", bedOf(c.getId()).getId(), "Freed single room should be reused first");
+
+        Resident f = svc.addResident("Fay", Gender.FEMALE, false);
+        svc.allocateResidentToBedWithGender(f, false);
+        Resident m = svc.addResident("Max", Gender.MALE, false);
+        svc.allocateResidentToBedWithGender(m, false);
+        assertEquals("W1-B4", bedOf(f.getId()).getId());
+        assertEquals("W1-B8", bedOf(m.getId()).getId(), "Male resident should skip the female room");
+    }
+
+    @Test
+    void testAuditLogKeepsEveryConcurrentEntry(@TempDir Path dir) throws Exception {
+        LocalDateTime from = LocalDateTime.now().minusMinutes(1);
+        AuditLog.shutdown();
+        AuditLog.configure(dir);
+        try {
+            Thread[] writers = new Thread[4];
+            for (int t = 0; t < writers.length; t++) {
+                String id = "T" + t;
+                writers[t] = new Thread(() -> { for (int i = 0; i < 500; i++) AuditLog.log(id, "audit test " + i); });
+                writers[t].start();
+            }
+            for (Thread w : writers) w.join();
+
+            List<AuditSearch.Entry> found = AuditSearch.search(null, "audit", from, LocalDateTime.now().plusMinutes(1));
+            assertEquals(2000, found.size());
+            assertEquals(500, found.stream().filter(e -> e.getStaffId().equals("T2")).count());
+        } finally {
+            AuditLog.shutdown();
+            AuditLog.configure(home);
+        }
+    }
+
+    @Test
+    void testFailedAuditWriterNeverBlocksCallers(@TempDir Path dir) throws Exception {
+        AuditLog.shutdown();
+        // A directory where the log file should be: every appender fails to open it
+        Files.createDirectories(dir.resolve("audit.log"));
+        AuditLog.configure(dir);
+        PrintStream err = System.err;
+        ByteArrayOutputStream reported = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(reported, true));
+        try {
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            Future<?> logging = pool.submit(() -> {
+                for (int i = 0; i < 20_000; i++) AuditLog.log("T", "lost " + i);
+                AuditLog.flush();
+                AuditLog.shutdown();
+            });
+            logging.get(30, TimeUnit.SECONDS);
+            pool.shutdown();
+            // The writer is not restarted for every entry, and the failure is reported once
+            assertEquals(1, reported.toString().split("Audit log writer failed", -1).length - 1, reported.toString());
+        } finally {
+            System.setErr(err);
+            AuditLog.shutdown();
+            AuditLog.configure(home);
+        }
+    }
+
+    @Test
+    void testLoadReplaysJournalAfterSnapshot() throws Exception {
+        svc.login("manager", "password");
+        Resident r = svc.addResident("Jo", Gender.FEMALE, false);
+        svc.allocateResidentToBed(r.getId());
+        svc.login("nurse", "password");
+        svc.administer(r.getId(), "Paracetamol", "500mg");
+        svc.save();
+
+        svc.load();
+
+        assertEquals(3, svc.getLastReplayCount(), "add, allocate and administer should come from the journal");
+        Resident loaded = svc.getResidents().iterator().next();
+        assertEquals("Jo", loaded.getName());
+        assertEquals(1, loaded.getAdministrations().size());
+        assertEquals(r.getId(), bedOf(r.getId()).getResident().getId());
+    }
+
+    @Test
+    void testSqliteBackendRoundTrip(@TempDir Path dir) throws Exception {
+        svc.setBackend(new SqliteStoreBackend(dir.resolve("carehome.db")));
+        try {
+            svc.clearAllData();
+            svc.login("manager", "password");
+            Resident r = svc.addResident("Sam", Gender.MALE, false);
+            svc.allocateResidentToBed(r.getId());
+            svc.login("nurse", "password");
+            svc.administer(r.getId(), "Ibuprofen", "200mg");
+            svc.save();
+
+            svc.load();
+
+            Bed bed = bedOf(r.getId());
+            assertEquals("Sam", bed.getResident().getName());
+            assertEquals("Ibuprofen", bed.getResident().getAdministrations().get(0).getMedicine());
+            assertNotNull(svc.login("nurse", "password"));
+        } finally {
+            svc.setBackend(StoreBackend.open());
+        }
+    }
+
+    @Test
+    void testSwitchingBackendKeepsLazilyLoadedHistory(@TempDir Path dir) throws Exception {
+        svc.setBackend(new SqliteStoreBackend(dir.resolve("first.db")));
+        try {
+            svc.login("manager", "password");
+            Resident r = svc.addResident("Lee", Gender.FEMALE, false);
+            svc.allocateResidentToBed(r.getId());
+            svc.login("nurse", "password");
+            svc.administer(r.getId(), "Ibuprofen", "200mg");
+            svc.save();
+            svc.load(); // the history now waits in first.db
+
+            svc.setBackend(new SqliteStoreBackend(dir.resolve("second.db")));
+            svc.save();
+            svc.load();
+
+            assertEquals(1, bedOf(r.getId()).getResident().getAdministrations().size());
+        } finally {
+            svc.setBackend(StoreBackend.open());
+        }
+    }
+
+    @Test
+    void testDuplicateUsernameRejected() throws Exception {
+        svc.login("manager", "password");
+        svc.createNurse("dupe", "one");
+
+        assertThrows(DuplicateUsernameException.class, () -> svc.createDoctor("dupe", "two"));
+        assertEquals(Role.NURSE, svc.login("dupe", "one").getRole());
+        assertThrows(AuthorizationException.class, () -> svc.login("dupe", "two"));
+    }
+
+    @Test
+    void testOvernightShiftRostersIntoNextDay() {
+        Nurse n = new Nurse("N1", "night", "pw");
+        n.assignShift(new Shift(DayOfWeek.SUNDAY, LocalTime.of(22, 0), LocalTime.of(6, 0)));
+        n.assignShift(new Shift(DayOfWeek.MONDAY, LocalTime.of(6, 0), LocalTime.of(8, 0)));
+
+        LocalDateTime monday = LocalDateTime.of(2024, 1, 1, 0, 0);
+        assertTrue(n.isRostered(monday.minusHours(1)), "Sunday 23:00");
+        assertTrue(n.isRostered(monday.plusHours(3)), "Monday 03:00");
+        assertTrue(n.isRostered(monday.plusHours(7)), "Monday 07:00, merged with the morning shift");
+        assertFalse(n.isRostered(monday.plusHours(9)), "Monday 09:00");
+        assertFalse(n.isRostered(monday.minusHours(3)), "Sunday 21:00");
+    }
+
+    @Test
+    void testComplianceReportListsEveryViolation() throws Exception {
+        svc.login("manager", "password");
+        Nurse a = svc.createNurse("nurseA", "pw");
+        Nurse b = svc.createNurse("nurseB", "pw");
+        Doctor d = svc.createDoctor("docAll", "pw");
+        for (DayOfWeek day : DayOfWeek.values())
+            svc.assignShift(d.getId(), new Shift(day, LocalTime.of(9, 0), LocalTime.of(10, 0)));
+        svc.assignShift(a.getId(), new Shift(DayOfWeek.MONDAY, LocalTime.of(8, 0), LocalTime.of(17, 0)));
+        svc.assignShift(b.getId(), new Shift(DayOfWeek.TUESDAY, LocalTime.of(20, 0), LocalTime.of(6, 0)));
+        svc.assignShift(b.getId(), new Shift(DayOfWeek.WEDNESDAY, LocalTime.of(6, 0), LocalTime.of(10, 0)));
+
+        ComplianceReport report = svc.complianceReport();
+
+        assertEquals(2, report.getViolations().size(), report.toString());
+        assertEquals(a.getId(), report.getViolations().get(0).getStaffId());
+        assertEquals(DayOfWeek.WEDNESDAY, report.getViolations().get(1).getDay(), "overnight hours count on the next day");
+    }
+
+    @Test
+    void testConcurrentSessionsLoseNoUpdates() throws Exception {
+        svc.login("manager", "password");
+        Resident shared = svc.addResident("Shared", Gender.FEMALE, false);
+        List<Resident> incoming = new ArrayList<>();
+        for (int i = 0; i < 38; i++) incoming.add(svc.addResident("R" + i, i % 2 == 0 ? Gender.MALE : Gender.FEMALE, false));
+
+        int threads = 8, perThread = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> work = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int slot = t;
+            work.add(pool.submit(() -> {
+                svc.login("nurse", "password");
+                for (int i = 0; i < perThread; i++) svc.administer(shared.getId(), "Vitamin D", "1000IU");
+                svc.login("manager", "password");
+                // 38 beds for 38 residents: a BedOccupiedException here means a bed was handed out twice
+                for (int i = slot; i < incoming.size(); i += threads)
+                    svc.allocateResidentToBed(incoming.get(i).getId());
+                return null;
+            }));
+        }
+        for (Future<?> f : work) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        assertEquals(threads * perThread, shared.getAdministrations().size());
+        Set<String> placed = new HashSet<>();
+        svc.getWards().forEach(w -> w.getBeds().forEach(b -> { if (!b.isEmpty()) placed.add(b.getResident().getId()); }));
+        assertEquals(38, placed.size(), "every bed should hold a distinct resident");
+    }
+
+    @Test
+    void testIdsNotReissuedAfterRestart() throws Exception {
+        svc.login("manager", "password");
+        Resident gone = svc.addResident("Gone", Gender.FEMALE, false);
+        svc.discharge(gone.getId());
+        svc.save();
+
+        IdUtil.reset();  // a fresh process starts with empty counters
+        svc.load();
+        svc.login("manager", "password");
+        Resident next = svc.addResident("Next", Gender.FEMALE, false);
+        assertTrue(Long.parseLong(next.getId().substring(3)) > Long.parseLong(gone.getId().substring(3)),
+                "Discharged resident's id must not be handed out again");
+    }
+
+    @Test
+    void testAddedWardSurvivesReload() throws Exception {
+        svc.login("manager", "password");
+        Ward w = svc.addWard("Ward 3", true);
+        assertEquals("W3-B1", w.getBeds().get(0).getId());
+        assertEquals(6, svc.getRooms(w).size());
+        svc.save();
+
+        svc.load();
+        assertEquals(3, svc.getWards().size());
+        assertEquals(19, svc.getWards().get(2).getBeds().size());
+    }
+
+    @Test
+    void testLocateResidentFollowsMovesAndDischarge() throws Exception {
+        svc.login("manager", "password");
+        Resident r = svc.addResident("Lou", Gender.MALE, false);
+        assertTrue(svc.locateResident(r.getId()).isEmpty());
+        svc.allocateResidentToBed(r.getId());
+        Bed first = svc.locateResident(r.getId()).orElseThrow();
+        assertSame(r, first.getResident());
+
+        svc.login("nurse", "password");
+        svc.moveResident(first.getId(), "W2-B1");
+        assertEquals("W2-B1", svc.locateResident(r.getId()).orElseThrow().getId());
+
+        svc.login("manager", "password");
+        svc.discharge(r.getId());
+        assertTrue(svc.locateResident(r.getId()).isEmpty());
+    }
+
+    @Test
+    void testBulkDischargeReleasesEveryBed() throws Exception {
+        svc.login("manager", "password");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Resident r = svc.addResident("Bulk " + i, i % 2 == 0 ? Gender.MALE : Gender.FEMALE, false);
+            svc.allocateResidentToBed(r.getId());
+            ids.add(r.getId());
+        }
+
+        assertEquals(5, svc.dischargeAll(ids).size());
+        for (String id : ids) assertTrue(svc.locateResident(id).isEmpty());
+        assertTrue(svc.getResidents().isEmpty());
+        assertThrows(NotFoundException.class, () -> svc.dischargeAll(List.of(ids.get(0))));
+    }
+
+    @Test
+    void testOldCsvArchivesMoveIntoSegments(@TempDir Path dir) throws Exception {
+        Files.writeString(dir.resolve("archive_RES4.csv"), "Resident,RES4,Eve,FEMALE,isolation=false\n");
+        Files.writeString(dir.resolve("archive_RES5.csv"), "Resident,RES5,Eve,FEMALE,isolation=true\n"
+                + "Administration,Paracetamol,500mg,2024-01-02T08:00,STF3\n");
+        ArchiveUtil.configure(dir);
+        try {
+            svc.login("manager", "password");
+            try (ArchiveReader archive = svc.openArchive()) {
+                assertEquals("Eve", archive.find("RES4").orElseThrow().getName());
+                assertTrue(archive.find("RES5").orElseThrow().isIsolation());
+                assertEquals(List.of("RES5"), archive.findByMedicine("Paracetamol").stream().map(ArchiveReader.Entry::getResidentId).toList());
+            }
+            assertFalse(Files.exists(dir.resolve("archive_RES4.csv")));
+            assertFalse(Files.exists(dir.resolve("archive_RES5.csv")));
+        } finally {
+            ArchiveUtil.configure(home);
+        }
+    }
+
+    @Test
+    void testArchivedResidentsCanBeQueried() throws Exception {
+        String medicine = "Archivol" + System.nanoTime();
+        svc.login("manager", "password");
+        Resident r = svc.addResident("Archie, Jr", Gender.MALE, false);
+        svc.allocateResidentToBed(r.getId());
+        Staff nurse = svc.login("nurse", "password");
+        svc.administer(r.getId(), medicine, "5mg");
+        svc.administer(r.getId(), "Water", "1 glass");
+        svc.login("manager", "password");
+        svc.discharge(r.getId());
+
+        try (ArchiveReader archive = svc.openArchive()) {
+            Resident back = archive.find(r.getId()).orElseThrow();
+            assertEquals("Archie, Jr", back.getName());
+            assertEquals(2, back.getAdministrations().size());
+            assertTrue(archive.findByMedicine(medicine).stream().anyMatch(e -> e.getResidentId().equals(r.getId())));
+
+            LocalDateTime now = LocalDateTime.now();
+            try (var rows = archive.administrations(medicine, now.minusHours(1), now.plusHours(1))) {
+                List<ArchiveReader.Administration> given = rows.toList();
+                assertEquals(1, given.size());
+                assertEquals(nurse.getId(), given.get(0).getRecord().getNurseId());
+            }
+        }
+    }
+
+    @Test
+    void testAdministrationHistoryRangeQuery() {
+        Resident r = new Resident("RES-H", "History", Gender.FEMALE, false);
+        LocalDateTime start = LocalDateTime.of(2024, 3, 1, 8, 0);
+        for (int day = 0; day < 30; day++)
+            for (int dose = 0; dose < 3; dose++)
+                r.addAdministration(new AdministrationRecord("Med" + dose, "10mg", start.plusDays(day).plusHours(dose * 4), "STF3"));
+        // Late entry for an earlier day still lands in time order
+        r.addAdministration(new AdministrationRecord("Late", "1mg", start.plusHours(1), "STF3"));
+
+        assertEquals(91, r.getAdministrations().size());
+        assertEquals("Late", r.getAdministrations().get(1).getMedicine());
+        LocalDateTime day10 = start.plusDays(10);
+        List<AdministrationRecord> lastDay = r.getAdministrationsBetween(day10.minusHours(24), day10);
+        assertEquals(3, lastDay.size());
+        assertEquals(start.plusDays(9), lastDay.get(0).getAt());
+        assertThrows(UnsupportedOperationException.class, () -> lastDay.remove(0));
+
+        // Views taken earlier keep their records when later ones are appended or slotted in before them
+        List<AdministrationRecord> before = r.getAdministrations();
+        for (int i = 0; i < 10; i++)
+            r.addAdministration(new AdministrationRecord("After", "1mg", start.plusDays(29).plusHours(12 + i), "STF3"));
+        r.addAdministration(new AdministrationRecord("Early", "1mg", start.minusMinutes(30), "STF3"));
+        assertEquals(91, before.size());
+        assertEquals("Med0", before.get(0).getMedicine());
+        assertEquals("Late", before.get(1).getMedicine());
+        assertEquals("Med2", before.get(90).getMedicine());
+        assertEquals(3, lastDay.size());
+        assertEquals(102, r.getAdministrations().size());
+        assertEquals("Early", r.getAdministrations().get(0).getMedicine());
+    }
+
+    @Test
+    void testScheduledDoseIsDueUntilGiven() throws Exception {
+        svc.login("manager", "password");
+        Resident r = svc.addResident("Mar", Gender.FEMALE, false);
+        svc.allocateResidentToBed(r.getId());
+        svc.login("doctor", "password");
+        Prescription p = svc.addPrescription(r.getId());
+        svc.addMedicationOrder(r.getId(), p.getId(), "Warfarin", "2mg", LocalTime.now().plusMinutes(30));
+
+        svc.login("nurse", "password");
+        List<DueDose> due = svc.dueWithin(60);
+        assertEquals(1, due.size());
+        assertEquals("Warfarin", due.get(0).getMedicine());
+        assertTrue(svc.overdueDoses().isEmpty());
+
+        svc.administer(r.getId(), "warfarin", "2mg");
+        assertTrue(svc.dueWithin(60).isEmpty(), "Given dose should move on to tomorrow");
+    }
+
+    @Test
+    void testDrugCatalogCanonicalizesEntries() throws Exception {
+        svc.login("manager", "password");
+        Resident r = svc.addResident("Cat", Gender.MALE, false);
+        svc.allocateResidentToBed(r.getId());
+        svc.login("nurse", "password");
+        svc.administer(r.getId(), "Amoxicillin", "250 mg");
+        svc.administer(r.getId(), "  amoxicillin ", "250mg");
+
+        List<AdministrationRecord> given = r.getAdministrations();
+        assertEquals("Amoxicillin", given.get(1).getMedicine());
+        assertEquals("250 mg", given.get(1).getDose());
+        assertEquals(given.get(0).getMedicineCode(), given.get(1).getMedicineCode());
+        assertTrue(svc.suggestMedicines("amox").contains("Amoxicillin"));
+
+        svc.save();
+        svc.load();
+        Resident back = svc.getResidents().stream().filter(x -> x.getId().equals(r.getId())).findFirst().orElseThrow();
+        assertEquals("Amoxicillin", back.getAdministrations().get(0).getMedicine());
+    }
+
+    @Test
+    void testAuditTrailFiltersByStaffAndAction() throws Exception {
+        LocalDateTime from = LocalDateTime.now().minusSeconds(1);
+        Staff mgr = svc.login("manager", "password");
+        Resident r = svc.addResident("Audrey", Gender.FEMALE, false);
+        svc.allocateResidentToBed(r.getId());
+        svc.discharge(r.getId());
+        svc.login("nurse", "password");
+        LocalDateTime to = LocalDateTime.now().plusSeconds(1);
+
+        svc.login("manager", "password");
+        List<AuditSearch.Entry> discharges = svc.auditTrail(null, "discharge", from, to);
+        assertTrue(discharges.stream().anyMatch(e -> e.getAction().equals("discharge Audrey")));
+        assertTrue(discharges.stream().allMatch(e -> e.getKind().equals("discharge")));
+
+        List<AuditSearch.Entry> byManager = svc.auditTrail(mgr.getId(), null, from, to);
+        assertTrue(byManager.size() >= 4, "login, add, allocate and discharge");
+        assertTrue(byManager.stream().allMatch(e -> e.getStaffId().equals(mgr.getId())));
+    }
+
+    @Test
+    void testOperationMetricsCountCallsAndErrors() throws Exception {
+        Metrics.reset();
+        svc.login("manager", "password");
+        assertThrows(AuthorizationException.class, () -> svc.login("manager", "wrong"));
+        Resident r = svc.addResident("Metered", Gender.FEMALE, false);
+        svc.allocateResidentToBed(r.getId());
+
+        Metrics.OperationStats login = Metrics.of("login").orElseThrow();
+        assertEquals(2, login.getCount());
+        assertEquals(Map.of("AuthorizationException", 1L), login.getErrors());
+        assertTrue(login.getP50Nanos() > 0 && login.getP50Nanos() <= login.getMaxNanos());
+        assertEquals(1, Metrics.of("allocateResidentToBed").orElseThrow().getCount());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        CompositeData[] ops = (CompositeData[]) server.getAttribute(new ObjectName(MetricsMXBean.OBJECT_NAME), "Operations");
+        assertTrue(Arrays.stream(ops).anyMatch(c -> c.get("operation").equals("login") && (Long) c.get("count") == 2));
+    }
+
+    @Test
+    void testBedObserverSeesOnlyChangedBeds() throws Exception {
+        List<String> changed = new CopyOnWriteArrayList<>();
+        int[] layouts = new int[1];
+        CareHomeService.BedObserver o = new CareHomeService.BedObserver() {
+            @Override public void bedChanged(Bed bed) { changed.add(bed.getId()); }
+            @Override public void layoutChanged() { layouts[0]++; }
+        };
+        svc.addBedObserver(o);
+        try {
+            svc.login("manager", "password");
+            Resident r = svc.addResident("Watched", Gender.MALE, false);
+            svc.allocateResidentToBed(r.getId());
+            String from = svc.locateResident(r.getId()).orElseThrow().getId();
+            Bed to = svc.getWards().get(1).getBeds().stream().filter(Bed::isEmpty).findFirst().orElseThrow();
+            svc.login("nurse", "password");
+            svc.moveResident(from, to.getId());
+            assertEquals(List.of(from, to.getId(), from), changed);
+
+            svc.clearAllData();
+            assertEquals(1, layouts[0]);
+        } finally {
+            svc.removeBedObserver(o);
+        }
+    }
+
+    @Test
+    void testAutosaveCoalescesBurstIntoOneWrite(@TempDir Path dir) throws Exception {
+        svc.setBackend(new SqliteStoreBackend(dir.resolve("carehome.db")));
+        Consumer<Autosave.Status> listener = null;
+        try {
+            svc.save();
+            assertFalse(svc.hasUnsavedChanges());
+            CountDownLatch saved = new CountDownLatch(1);
+            listener = st -> { if (st.getState() == Autosave.State.SAVED) saved.countDown(); };
+            svc.autosave().addListener(listener);
+            long savesBefore = Metrics.of("save").orElseThrow().getCount();
+            svc.autosave().start(Duration.ofMillis(300));
+
+            svc.login("manager", "password");
+            for (int i = 0; i < 10; i++) svc.addResident("Burst " + i, Gender.FEMALE, false);
+            assertTrue(svc.hasUnsavedChanges());
+            assertTrue(saved.await(10, TimeUnit.SECONDS));
+            assertFalse(svc.hasUnsavedChanges());
+            assertEquals(savesBefore + 1, Metrics.of("save").orElseThrow().getCount());
+
+            svc.load();
+            assertEquals(10, svc.getResidents().size());
+        } finally {
+            svc.autosave().stop();
+            svc.autosave().removeListener(listener);
+            svc.setBackend(StoreBackend.open());
+        }
+    }
+
+    @Test
+    void testBulkAdmissionPlacesIsolationFirst(@TempDir Path dir) throws Exception {
+        svc.login("manager", "password");
+        Path csv = dir.resolve("transfer.csv");
+        StringBuilder rows = new StringBuilder("name,gender,isolation\n");
+        for (int i = 0; i < 15; i++) rows.append("Transfer ").append(i).append(",MALE,false\n");
+        rows.append("Smith, Jo,FEMALE,true\n");
+        Files.writeString(csv, rows);
+
+        List<Resident> admitted = svc.admitFromCsv(csv, false);
+        assertEquals(16, admitted.size());
+        Resident iso = admitted.get(15);
+        assertEquals("Smith, Jo", iso.getName());
+        assertEquals(1, svc.locateResident(iso.getId()).orElseThrow().getRoom().size());
+        for (Resident r : admitted) assertTrue(svc.locateResident(r.getId()).isPresent());
+        assertEquals(16, svc.getResidents().size());
+    }
+
+    @Test
+    void testBulkAdmissionIsAllOrNothing() throws Exception {
+        svc.login("manager", "password");
+        List<Admission> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) batch.add(new Admission("Iso " + i, Gender.MALE, true));
+        // Two wards have two singles and two doubles: only four isolation places
+        assertThrows(BedOccupiedException.class, () -> svc.admitAll(batch, true));
+        assertTrue(svc.getResidents().isEmpty());
+        assertTrue(svc.getWards().stream().flatMap(w -> w.getBeds().stream()).allMatch(Bed::isEmpty));
+        assertEquals(4, svc.admitAll(batch.subList(0, 4), true).size());
+    }
+
+    // A file store whose batch writes or commits can be made to fail
+    private static final class FlakyBackend implements StoreBackend {
+        final StoreBackend real;
+        final AtomicBoolean failBatch = new AtomicBoolean(), failCommit = new AtomicBoolean();
+        FlakyBackend(Path dir) throws IOException {
+            real = new SerializedStoreBackend(dir.resolve("store.ser"), dir.resolve("store.journal"));
+        }
+        public DataStore load() throws Exception { return real.load(); }
+        public void record(Mutation m, String... args) throws IOException { real.record(m, args); }
+        public void recordAll(List<Change> changes) throws IOException {
+            if (failBatch.get()) throw new IOException("disk full");
+            real.recordAll(changes);
+        }
+        public void discardBatch() throws IOException { real.discardBatch(); }
+        public void commit(DataStore store) throws IOException {
+            real.commit(store); // on disk, and then the caller hears it failed
+            if (failCommit.get()) throw new IOException("disk full");
+        }
+        public void snapshot(DataStore store) throws IOException { real.snapshot(store); }
+        public void close() throws IOException { real.close(); }
+    }
+
+    @Test
+    void testBulkAdmissionUndoneWhenItCannotBeRecorded(@TempDir Path dir) throws Exception {
+        FlakyBackend backend = new FlakyBackend(dir);
+        svc.setBackend(backend);
+        try {
+            svc.save();
+            svc.login("manager", "password");
+            List<Admission> pair = List.of(new Admission("Ann", Gender.FEMALE, false), new Admission("Bea", Gender.FEMALE, true));
+            backend.failBatch.set(true);
+            assertThrows(IOException.class, () -> svc.admitAll(pair, false));
+            assertTrue(svc.getResidents().isEmpty());
+            assertTrue(svc.getWards().stream().flatMap(w -> w.getBeds().stream()).allMatch(Bed::isEmpty));
+
+            backend.failBatch.set(false);
+            assertEquals(2, svc.admitAll(pair, false).size());
+            svc.load(); // the batch comes back from the journal as a whole
+            assertEquals(2, svc.getResidents().size());
+            for (Resident r : svc.getResidents()) assertTrue(svc.locateResident(r.getId()).isPresent());
+        } finally {
+            svc.setBackend(StoreBackend.open());
+        }
+    }
+
+    @Test
+    void testFailedBulkAdmissionStaysUndoneAfterRestart(@TempDir Path dir) throws Exception {
+        FlakyBackend backend = new FlakyBackend(dir);
+        svc.setBackend(backend);
+        try {
+            svc.save();
+            svc.login("manager", "password");
+            Resident kept = svc.addResident("Cy", Gender.MALE, false);
+            svc.save();
+            backend.failCommit.set(true);
+            assertThrows(IOException.class, () -> svc.admitAll(
+                    List.of(new Admission("Ann", Gender.FEMALE, false), new Admission("Bea", Gender.FEMALE, true)), false));
+            assertEquals(List.of(kept.getId()), svc.getResidents().stream().map(Resident::getId).toList());
+
+            // What a restart right now would find
+            DataStore restarted = new SerializedStoreBackend(dir.resolve("store.ser"), dir.resolve("store.journal")).load();
+            assertEquals(Set.of(kept.getId()), restarted.residents.keySet());
+            assertTrue(restarted.wards.stream().flatMap(w -> w.getBeds().stream()).allMatch(Bed::isEmpty));
+        } finally {
+            svc.setBackend(StoreBackend.open());
+        }
+    }
+
+    @Test
+    void testIsolationPlanFreesSingleRoom() throws Exception {
+        svc.login("manager", "password");
+        List<Admission> full = new ArrayList<>();
+        for (int i = 0; i < 38; i++) full.add(new Admission("M" + i, Gender.MALE, false));
+        List<Resident> men = svc.admitAll(full, false);
+        List<Resident> inFours = men.stream()
+                .filter(m -> svc.locateResident(m.getId()).orElseThrow().getRoom().size() == 4).toList();
+        svc.discharge(inFours.get(0).getId());
+        svc.discharge(inFours.get(1).getId());
+
+        Resident iso = svc.addResident("Isolated", Gender.FEMALE, true);
+        assertThrows(BedOccupiedException.class, () -> svc.allocateResidentToBed(iso.getId()));
+        MovePlan plan = svc.planIsolation(iso.getId(), Duration.ofSeconds(2)).orElseThrow();
+        assertEquals(1, plan.getMoves().size());
+        String single = plan.getMoves().get(0).getFromBedId();
+        assertEquals(single, plan.getTargetBedId());
+
+        // Fill the vacancies the plan relies on: applying must fail and change nothing
+        List<Resident> late = svc.admitAll(List.of(new Admission("Late 1", Gender.MALE, false),
+                new Admission("Late 2", Gender.MALE, false)), false);
+        assertThrows(BedOccupiedException.class, () -> svc.applyPlan(plan));
+        assertEquals(single, svc.locateResident(plan.getMoves().get(0).getResidentId()).orElseThrow().getId());
+        assertTrue(svc.locateResident(iso.getId()).isEmpty());
+        assertTrue(svc.planIsolation(iso.getId(), Duration.ofSeconds(2)).isEmpty());
+
+        svc.discharge(late.get(0).getId());
+        MovePlan again = svc.planIsolation(iso.getId(), Duration.ofSeconds(2)).orElseThrow();
+        svc.applyPlan(again);
+        assertEquals(again.getTargetBedId(), svc.locateResident(iso.getId()).orElseThrow().getId());
+        assertTrue(svc.locateResident(iso.getId()).orElseThrow().getRoom().size() <= 2);
+    }
+
+    @Test
+    void testBinarySnapshotRoundTripsAndReadsLegacyFiles(@TempDir Path dir) throws Exception {
+        DataStore ds = new DataStore();
+        Nurse nurse = new Nurse("N1", "nina", "pw");
+        nurse.assignShift(new Shift(DayOfWeek.MONDAY, LocalTime.of(22, 0), LocalTime.of(6, 0)));
+        ds.staff.put(nurse.getId(), nurse);
+        Ward ward = new Ward("Ward 1", true);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 8, 0);
+        for (int i = 0; i < 20; i++) {
+            Resident r = new Resident("R" + i, "Resident " + i, i % 2 == 0 ? Gender.MALE : Gender.FEMALE, i == 0);
+            Prescription p = new Prescription("P" + i, "D1", start);
+            p.addOrder(new MedicationOrder("Paracetamol", "500mg", LocalTime.of(8, 0)));
+            r.addPrescription(p);
+            for (int h = 0; h < 200; h++)
+                r.addAdministration(new AdministrationRecord("Paracetamol", "500 mg", start.plusHours(h * 6L), "N1"));
+            ds.residents.put(r.getId(), r);
+            Bed b = new Bed("W1-B" + i);
+            b.assign(r);
+            ward.addBed(b);
+        }
+        ward.addBed(new Bed("W1-B20"));
+        ds.wards.add(ward);
+        ds.idHighWater.put("R", 20L);
+        ds.journalSeq = 42;
+
+        Path binary = dir.resolve("store.bin"), legacy = dir.resolve("store.ser");
+        DataStore.save(ds, binary.toString());
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(legacy))) {
+            out.writeObject(ds);
+        }
+        assertTrue(Files.size(binary) * 4 < Files.size(legacy), Files.size(binary) + " vs " + Files.size(legacy));
+
+        for (Path file : List.of(binary, legacy)) {
+            DataStore back = DataStore.load(file.toString());
+            assertEquals(42, back.journalSeq);
+            assertEquals(Map.of("R", 20L), back.idHighWater);
+            assertEquals(nurse.getShifts().toString(), back.staff.get("N1").getShifts().toString());
+            Resident r = back.residents.get("R3");
+            assertEquals(Gender.FEMALE, r.getGender());
+            assertTrue(back.residents.get("R0").isIsolation());
+            MedicationOrder o = r.getPrescriptions().get(0).getOrders().get(0);
+            assertEquals("Paracetamol", o.getMedicine());
+            assertEquals("500mg", o.getDose());
+            List<AdministrationRecord> given = r.getAdministrations();
+            assertEquals(200, given.size());
+            assertEquals(start.plusHours(199 * 6L), given.get(199).getAt());
+            assertEquals("N1", given.get(199).getNurseId());
+            assertSame(r, back.wards.get(0).getBeds().get(3).getResident());
+            assertTrue(back.wards.get(0).getBeds().get(20).isEmpty());
+        }
+    }
+
+    @Test
+    void testFirstReleaseStoreStillLoads() throws Exception {
+        // Java-serialized by the original classes, which had no serialVersionUID
+        Path file = Paths.get(getClass().getResource("/first-release-store.ser").toURI());
+        DataStore ds = DataStore.load(file.toString());
+        assertEquals("[TUESDAY 07:30-15:00]", ds.staff.get("N1").getShifts().toString());
+        Resident r = ds.residents.get("R1");
+        assertTrue(r.isIsolation());
+        assertEquals("100mg", r.getPrescriptions().get(0).getOrders().get(0).getDose());
+        assertEquals(LocalDateTime.of(2024, 3, 5, 9, 1, 2), r.getAdministrations().get(0).getAt());
+        assertSame(r, ds.wards.get(0).getBeds().get(0).getResident());
+    }
+
+    @Test
+    void testRecordsAddedBeforeLazyLoadLandAfterSavedOnes(@TempDir Path dir) throws Exception {
+        DataStore ds = new DataStore();
+        Resident saved = new Resident("RES1", "Bob", Gender.MALE, false);
+        Prescription p = new Prescription("RX1", "STF2", LocalDateTime.of(2025, 6, 1, 9, 0));
+        p.addOrder(new MedicationOrder("Ibuprofen", "200 mg", LocalTime.of(12, 0)));
+        saved.addPrescription(p);
+        for (int d = 0; d < 3; d++)
+            saved.addAdministration(new AdministrationRecord("Ibuprofen", "200 mg", LocalDateTime.of(2025, 6, 2 + d, 12, 5), "STF3"));
+        ds.residents.put(saved.getId(), saved);
+        Ward ward = new Ward("W1", true);
+        Bed bed = new Bed("W1-B1");
+        bed.assign(saved);
+        ward.addBed(bed);
+        ds.wards.add(ward);
+
+        Path file = dir.resolve("store.chs");
+        DataStore.save(ds, file.toString());
+        DataStore back = DataStore.load(file.toString());
+        Resident r = back.residents.get("RES1");
+        assertSame(r, back.wards.get(0).getBeds().get(0).getResident());
+        // The next snapshot can replace the file while the history still waits in it
+        Path next = dir.resolve("store.chs.tmp");
+        DataStore.save(new DataStore(), next.toString());
+        Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Adding before the history was ever read still lands after it
+        r.addAdministration(new AdministrationRecord("Ibuprofen", "200mg", LocalDateTime.of(2025, 6, 9, 12, 0), "STF3"));
+        List<AdministrationRecord> given = r.getAdministrations();
+        assertEquals(4, given.size());
+        assertEquals(LocalDateTime.of(2025, 6, 2, 12, 5), given.get(0).getAt());
+        assertEquals(LocalDateTime.of(2025, 6, 9, 12, 0), given.get(3).getAt());
+        assertEquals("RX1", r.getPrescriptions().get(0).getId());
+    }
+
+    @Test
+    void testFacilitiesAreIndependentAndGroupQueriesCoverThemAll() throws Exception {
+        CareHomeGroup group = CareHomeGroup.get();
+        try {
+            CareHomeService north = group.openFacility("t25-north");
+            CareHomeService south = group.openFacility("t25-south");
+            assertSame(north, group.facility("t25-north"));
+            assertThrows(NotFoundException.class, () -> group.facility("t25-nowhere"));
+            assertTrue(group.facilityIds().containsAll(List.of(CareHomeGroup.DEFAULT, "t25-north", "t25-south")));
+            int before = south.countVacantIsolationRooms();
+            south.save();
+
+            north.login("manager", "password");
+            assertThrows(AuthorizationException.class, () -> south.addResident("Intruder", Gender.MALE, false),
+                    "a login at one facility must not authorise changes at another");
+            Resident r = north.addResident("Iso North", Gender.MALE, true);
+            north.allocateResidentToBed(r.getId());
+
+            assertEquals(before - 1, north.countVacantIsolationRooms());
+            assertEquals(before, south.countVacantIsolationRooms());
+            assertTrue(south.getResidents().isEmpty());
+            assertFalse(south.hasUnsavedChanges(), "north's id leases belong in north's store only");
+            assertTrue(svc.getResidents().isEmpty());
+            assertNotEquals(north.getStaff().iterator().next().getId(), south.getStaff().iterator().next().getId());
+
+            Map<String, Integer> vacant = group.vacantIsolationRoomsByFacility();
+            assertEquals(before - 1, vacant.get("t25-north"));
+            assertEquals(vacant.values().stream().mapToInt(Integer::intValue).sum(), group.countVacantIsolationRooms());
+            assertEquals(vacant.keySet(), group.complianceByFacility().keySet());
+
+            // A restarted process that opens south first must still issue ids past north's
+            north.save();
+            IdUtil.reset();
+            IdUtil.persistTo(home.resolve("carehome.ids"));
+            south.load();
+            south.login("manager", "password");
+            Resident later = south.addResident("South", Gender.FEMALE, false);
+            assertTrue(Long.parseLong(later.getId().substring(3)) > Long.parseLong(r.getId().substring(3)),
+                    later.getId() + " must not reuse an id north has handed out");
+        } finally {
+            for (String id : List.of("t25-north", "t25-south")) {
+                group.closeFacility(id);
+                for (String ext : List.of(".ser", ".journal", ".db")) Files.deleteIfExists(home.resolve("carehome-" + id + ext));
+            }
+        }
+    }
+
+    private Bed bedOf(String residentId) {
+        return svc.getWards().stream()
+                .flatMap(w -> w.getBeds().stream())
+                .filter(b -> b.getResident() != null && b.getResident().getId().equals(residentId))
+                .findFirst().orElseThrow();
+    }
 }